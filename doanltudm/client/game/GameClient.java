@@ -4,6 +4,7 @@ import java.net.*;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import shared.GameDelta;
 import shared.GameState;
 import shared.GameFeatures;
 import model.User;
@@ -17,6 +18,7 @@ public class GameClient {
     private boolean isConnected;
     private ExecutorService messageHandler;
     private GameState currentGameState;
+    private boolean resyncPending; // message thread only
     private Map<String, Player> players;
     private BlockingQueue<Object> messageQueue;
 
@@ -77,6 +79,12 @@ public class GameClient {
                     case "ERROR":
                         handleError();
                         break;
+                    case "GAME_STATE":
+                        updateGameState((GameState) in.readObject());
+                        break;
+                    case "GAME_DELTA":
+                        handleGameDelta((GameDelta) in.readObject());
+                        break;
                 }
             } else if (message instanceof GameState) {
                 updateGameState((GameState) message);
@@ -170,8 +178,35 @@ public class GameClient {
         }
     }
 
+    private void handleGameDelta(GameDelta delta) {
+        GameState state = currentGameState;
+        if (resyncPending) {
+            // Older than the snapshot on its way, which already includes it
+            return;
+        }
+        if (state == null || !state.apply(delta)) {
+            // Missed a change (or never had a snapshot), ask for the full state
+            resyncPending = true;
+            requestResync();
+            return;
+        }
+        if (gameFrame != null) {
+            gameFrame.updateGameState(state);
+        }
+    }
+
+    private void requestResync() {
+        try {
+            out.writeObject("RESYNC");
+            out.flush();
+        } catch (IOException e) {
+            handleDisconnection(e);
+        }
+    }
+
     private void updateGameState(GameState newState) {
         currentGameState = newState;
+        resyncPending = false;
         if (gameFrame != null) {
             gameFrame.updateGameState(newState);
         }
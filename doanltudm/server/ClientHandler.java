@@ -3,10 +3,13 @@ package server;
 import java.net.*;
 import java.io.*;
 import model.User;
+import shared.GameState;
 import java.util.HashMap;
 import java.util.Map;
 
 public class ClientHandler implements Runnable {
+    private static final int STREAM_RESET_INTERVAL = 256; // messages between stream resets
+
     private Socket socket;
     private GameServer gameServer;
     private ObjectInputStream in;
@@ -14,6 +17,7 @@ public class ClientHandler implements Runnable {
     private String playerName;
     private int score;
     private boolean isRunning;
+    private int sentSinceReset; // guarded by this
 
     public ClientHandler(Socket socket, GameServer gameServer) {
         this.socket = socket;
@@ -59,6 +63,9 @@ public class ClientHandler implements Runnable {
                     case "NUMBER_CLICK":
                         handleNumberClick();
                         break;
+                    case "RESYNC":
+                        gameServer.resync(this);
+                        break;
                     case "GET_LEADERBOARD":
                         sendLeaderboard();
                         break;
@@ -83,11 +90,13 @@ public class ClientHandler implements Runnable {
         String email = (String) in.readObject();
         String password = (String) in.readObject();
 
-        if (gameServer.verifyLogin(email, password)) {
+        if (!gameServer.verifyLogin(email, password)) {
+            sendMessage("LOGIN_FAILED");
+        } else if (!gameServer.claimSession(this, email)) {
+            sendMessage("LOGIN_FAILED:Already logged in from another client");
+        } else {
             this.playerName = email;
             sendMessage("LOGIN_SUCCESS");
-        } else {
-            sendMessage("LOGIN_FAILED");
         }
     }
 
@@ -121,16 +130,37 @@ public class ClientHandler implements Runnable {
         sendObject(stats);
     }
 
-    public void sendMessage(String message) throws IOException {
+    public synchronized void sendMessage(String message) throws IOException {
         out.writeObject(message);
         out.flush();
     }
 
-    public void sendObject(Object obj) throws IOException {
+    public synchronized void sendObject(Object obj) throws IOException {
         out.writeObject(obj);
         out.flush();
     }
 
+    /**
+     * Sends a command and its payload, from any thread. A failed send is
+     * only logged; the read loop notices the broken connection.
+     */
+    public synchronized void sendMessage(String type, Object data) {
+        try {
+            if (data instanceof GameState || ++sentSinceReset >= STREAM_RESET_INTERVAL) {
+                // The stream remembers every object it wrote and sends repeats
+                // as back-references, so a snapshot of the same GameState would
+                // arrive stale. Resetting also lets go of old deltas.
+                out.reset();
+                sentSinceReset = 0;
+            }
+            out.writeObject(type);
+            out.writeObject(data);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error sending " + type + ": " + e.getMessage());
+        }
+    }
+
     private void sendError(String error) {
         try {
             sendMessage("ERROR");
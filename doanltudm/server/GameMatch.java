@@ -1,5 +1,6 @@
 package server;
 
+import shared.GameDelta;
 import shared.GameFeatures;
 import shared.GameState;
 import java.util.*;
@@ -8,16 +9,20 @@ import java.util.concurrent.*;
 public class GameMatch {
     private final GameState gameState;
     private final Map<String, ClientHandler> players;
-    private final ScheduledExecutorService scheduler;
+    private final ScheduledExecutorService scheduler; // shared by all matches, owned by the server
     private final RankingSystem rankingSystem;
     private final Map<String, Long> powerUpCooldowns;
     private ScheduledFuture<?> gameTimer;
+    private final Set<ScheduledFuture<?>> powerUpTimers = ConcurrentHashMap.newKeySet();
     private final long startTime;
+    private final Runnable onFinished; // lets the server drop the match as soon as it is over
+    private boolean finished;
 
-    public GameMatch(RankingSystem rankingSystem) {
+    public GameMatch(RankingSystem rankingSystem, ScheduledExecutorService scheduler, Runnable onFinished) {
         this.gameState = new GameState();
         this.players = new ConcurrentHashMap<>();
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.scheduler = scheduler;
+        this.onFinished = onFinished;
         this.rankingSystem = rankingSystem;
         this.powerUpCooldowns = new ConcurrentHashMap<>();
         this.startTime = System.currentTimeMillis();
@@ -31,6 +36,8 @@ public class GameMatch {
         players.put(username, handler);
         gameState.addPlayer(username);
         powerUpCooldowns.put(username, 0L);
+        // Everyone's copy changed shape, so this is one of the few full snapshots
+        broadcastGameState();
 
         if (players.size() >= GameFeatures.MIN_PLAYERS) {
             startGameIfReady();
@@ -60,8 +67,7 @@ public class GameMatch {
             points += GameFeatures.LUCKY_NUMBER_BONUS;
         }
 
-        gameState.updateScore(username, points);
-        broadcastGameState();
+        broadcastDelta(gameState.updateScore(username, number, points));
 
         if (gameState.isGameComplete()) {
             endGame("Game Complete!");
@@ -88,17 +94,15 @@ public class GameMatch {
                 handleBlockNumbers(username);
                 break;
         }
-
-        broadcastGameState();
     }
 
     private void handlePriorityMode(String username) {
         // Give player exclusive access for a short duration
-        scheduler.schedule(() -> {
+        schedulePowerUpEnd(() -> {
             broadcastToAll("POWER_UP_END", Map.of(
                     "type", "PRIORITY",
                     "username", username));
-        }, GameFeatures.PRIORITY_MODE_DURATION, TimeUnit.MILLISECONDS);
+        }, GameFeatures.PRIORITY_MODE_DURATION);
 
         broadcastToAll("POWER_UP_START", Map.of(
                 "type", "PRIORITY",
@@ -115,17 +119,17 @@ public class GameMatch {
             numbersToBlock.add(gameNumbers[random.nextInt(gameNumbers.length)]);
         }
 
-        players.keySet().stream()
-                .filter(player -> !player.equals(username))
-                .forEach(player -> gameState.blockNumbers(player, numbersToBlock));
+        broadcastDelta(gameState.blockNumbersForOthers(username, numbersToBlock));
 
-        scheduler.schedule(() -> {
-            players.keySet().forEach(gameState::unblockNumbers);
-            broadcastToAll("POWER_UP_END", Map.of(
-                    "type", "BLOCK",
-                    "username", username));
-            broadcastGameState();
-        }, GameFeatures.BLOCK_NUMBERS_DURATION, TimeUnit.MILLISECONDS);
+        schedulePowerUpEnd(() -> {
+            // Under the match lock so the delta goes out in version order
+            synchronized (this) {
+                broadcastDelta(gameState.unblockAll());
+                broadcastToAll("POWER_UP_END", Map.of(
+                        "type", "BLOCK",
+                        "username", username));
+            }
+        }, GameFeatures.BLOCK_NUMBERS_DURATION);
 
         broadcastToAll("POWER_UP_START", Map.of(
                 "type", "BLOCK",
@@ -133,6 +137,11 @@ public class GameMatch {
                 "numbers", numbersToBlock));
     }
 
+    private void schedulePowerUpEnd(Runnable task, long delayMs) {
+        // Kept so endGame can cancel them; a match only sees a handful
+        powerUpTimers.add(scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+    }
+
     private synchronized void endGame(String reason) {
         if (gameTimer != null) {
             gameTimer.cancel(false);
@@ -185,23 +194,59 @@ public class GameMatch {
         }
     }
 
+    /**
+     * Full state to everyone. Only on join and start, everything else goes out as a delta.
+     */
     private void broadcastGameState() {
-        broadcastToAll("GAME_STATE", Map.of(
-                "state", gameState,
-                "scores", gameState.getScores(),
-                "blocked", gameState.getBlockedNumbers(null)));
+        players.values().forEach(handler -> handler.sendMessage("GAME_STATE", gameState));
+    }
+
+    private void broadcastDelta(GameDelta delta) {
+        players.values().forEach(handler -> handler.sendMessage("GAME_DELTA", delta));
+    }
+
+    /**
+     * Full state to one client that fell behind (RESYNC)
+     */
+    public synchronized void sendSnapshot(ClientHandler client) {
+        client.sendMessage("GAME_STATE", gameState);
     }
 
     private void broadcastToAll(String type, Map<String, Object> data) {
         players.values().forEach(handler -> handler.sendMessage(type, data));
     }
 
+    public synchronized void handlePlayerDisconnect(ClientHandler client) {
+        players.values().remove(client);
+        if (players.isEmpty()) {
+            // Abandoned, nobody is left to finish it
+            if (gameTimer != null) {
+                gameTimer.cancel(false);
+            }
+            cleanup();
+        }
+    }
+
     private void cleanup() {
-        scheduler.shutdown();
+        if (finished) {
+            return;
+        }
+        finished = true;
+        // The scheduler is shared, so only this match's timers are cancelled
+        powerUpTimers.forEach(timer -> timer.cancel(false));
+        powerUpTimers.clear();
+        onFinished.run(); // before the players are cleared, the server unmaps them
         players.clear();
         powerUpCooldowns.clear();
     }
 
+    /**
+     * True once the match has been cleaned up and the server told
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
     public boolean isComplete() {
         return gameState.isGameComplete();
     }
@@ -209,4 +254,8 @@ public class GameMatch {
     public int getPlayerCount() {
         return players.size();
     }
+
+    public Collection<ClientHandler> getPlayers() {
+        return players.values();
+    }
 }
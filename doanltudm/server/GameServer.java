@@ -10,29 +10,36 @@ import shared.GameState;
 
 public class GameServer {
     private static final int PORT = 12345;
+    private static final int SCHEDULER_THREADS = 2;
     private ServerSocket serverSocket;
-    private List<ClientHandler> clients;
+    private SessionRegistry sessions;
     private Map<String, GameMatch> matches;
+    // Which match each player is in, so clicks are routed without a search
+    private final ConcurrentHashMap<ClientHandler, GameMatch> playerMatches = new ConcurrentHashMap<>();
+    // Matches still taking players, oldest first; entries that filled up or started are dropped lazily
+    private final Queue<GameMatch> openMatches = new ConcurrentLinkedQueue<>();
     private DatabaseManager dbManager;
     private RankingSystem rankingSystem;
     private ExecutorService executor;
     private ScheduledExecutorService scheduler;
 
     public GameServer() {
-        this.clients = new CopyOnWriteArrayList<>();
+        this.sessions = new SessionRegistry();
         this.matches = new ConcurrentHashMap<>();
         this.dbManager = new DatabaseManager();
         this.rankingSystem = new RankingSystem(dbManager);
         this.executor = Executors.newCachedThreadPool();
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        // One small pool runs every match timer and the maintenance tasks,
+        // instead of a scheduler thread per match
+        ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS);
+        timers.setRemoveOnCancelPolicy(true); // cancelled game timers don't linger in the queue
+        this.scheduler = timers;
         startMaintenanceTasks();
     }
 
     private void startMaintenanceTasks() {
-        // Clean up abandoned matches every 5 minutes
-        scheduler.scheduleAtFixedRate(() -> {
-            matches.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        }, 5, 5, TimeUnit.MINUTES);
+        // Finished and abandoned matches remove themselves (see createMatch),
+        // so there is no periodic sweep for them
 
         // Update rankings every minute
         scheduler.scheduleAtFixedRate(() -> {
@@ -48,7 +55,7 @@ public class GameServer {
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 ClientHandler client = new ClientHandler(clientSocket, this);
-                clients.add(client);
+                sessions.connected(client);
                 executor.execute(client);
             }
         } catch (IOException e) {
@@ -59,30 +66,56 @@ public class GameServer {
     }
 
     public void findGame(ClientHandler client) {
-        // First check if player is already in a match
-        for (GameMatch match : matches.values()) {
-            if (match.hasPlayer(client)) {
-                return;
-            }
+        // Look for available match or create new one
+        GameMatch availableMatch = findOpenMatch();
+
+        // Claimed before joining, so a player already in a match stops here
+        if (playerMatches.putIfAbsent(client, availableMatch) != null) {
+            return;
         }
 
-        // Look for available match or create new one
-        GameMatch availableMatch = matches.values().stream()
-                .filter(m -> !m.isStarted() && m.getPlayerCount() < GameFeatures.MAX_PLAYERS)
-                .findFirst()
-                .orElseGet(() -> {
-                    GameMatch newMatch = new GameMatch();
-                    matches.put(UUID.randomUUID().toString(), newMatch);
-                    return newMatch;
-                });
-
-        if (availableMatch.addPlayer(client)) {
+        // matchFinished runs under the match's lock, so it either sees this
+        // player and unmaps them, or happened before and we back out
+        synchronized (availableMatch) {
+            if (availableMatch.isFinished() || !availableMatch.addPlayer(client)) {
+                playerMatches.remove(client, availableMatch);
+                return;
+            }
             if (availableMatch.getPlayerCount() >= GameFeatures.MIN_PLAYERS) {
                 availableMatch.startGame();
             }
         }
     }
 
+    private GameMatch findOpenMatch() {
+        GameMatch match;
+        while ((match = openMatches.peek()) != null) {
+            if (!match.isStarted() && match.getPlayerCount() < GameFeatures.MAX_PLAYERS) {
+                return match;
+            }
+            openMatches.remove(match);
+        }
+        return createMatch();
+    }
+
+    private GameMatch createMatch() {
+        String matchId = UUID.randomUUID().toString();
+        GameMatch newMatch = new GameMatch(rankingSystem, scheduler, () -> matchFinished(matchId));
+        matches.put(matchId, newMatch);
+        openMatches.offer(newMatch);
+        return newMatch;
+    }
+
+    private void matchFinished(String matchId) {
+        GameMatch match = matches.remove(matchId);
+        if (match != null) {
+            openMatches.remove(match);
+            for (ClientHandler player : match.getPlayers()) {
+                playerMatches.remove(player, match);
+            }
+        }
+    }
+
     public void handleNumberClick(int number, ClientHandler client) {
         GameMatch match = findPlayerMatch(client);
         if (match != null) {
@@ -115,16 +148,24 @@ public class GameServer {
                 .collect(Collectors.toMap(e -> e.getKey().name(), Map.Entry::getValue)));
     }
 
+    public void resync(ClientHandler client) {
+        GameMatch match = findPlayerMatch(client);
+        if (match != null) {
+            match.sendSnapshot(client);
+        }
+    }
+
     private GameMatch findPlayerMatch(ClientHandler client) {
-        return matches.values().stream()
-                .filter(m -> m.hasPlayer(client))
-                .findFirst()
-                .orElse(null);
+        return playerMatches.get(client);
+    }
+
+    public boolean claimSession(ClientHandler client, String playerName) {
+        return sessions.claim(client, playerName);
     }
 
     public void removeClient(ClientHandler client) {
-        clients.remove(client);
-        GameMatch match = findPlayerMatch(client);
+        sessions.disconnected(client);
+        GameMatch match = playerMatches.remove(client);
         if (match != null) {
             match.handlePlayerDisconnect(client);
         }
@@ -139,7 +180,7 @@ public class GameServer {
     }
 
     private void updateGlobalRankings() {
-        for (ClientHandler client : clients) {
+        for (ClientHandler client : sessions.getConnected()) {
             User user = client.getUser();
             if (user != null) {
                 rankingSystem.updatePlayerRanking(user.getUsername(), user.getStats());
@@ -157,7 +198,7 @@ public class GameServer {
 
     private void shutdown() {
         try {
-            for (ClientHandler client : clients) {
+            for (ClientHandler client : sessions.getConnected()) {
                 client.stop();
             }
             executor.shutdown();
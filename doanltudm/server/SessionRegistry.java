@@ -0,0 +1,38 @@
+package server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connected clients, and the logged-in ones indexed by player name.
+ * A login claims the name with putIfAbsent, so only one client can hold it.
+ */
+public class SessionRegistry {
+    private final Set<ClientHandler> connected = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, ClientHandler> byName = new ConcurrentHashMap<>();
+
+    public void connected(ClientHandler client) {
+        connected.add(client);
+    }
+
+    public void disconnected(ClientHandler client) {
+        connected.remove(client);
+        if (client.getPlayerName() != null) {
+            byName.remove(client.getPlayerName(), client);
+        }
+    }
+
+    /**
+     * Returns false if another client is already logged in under the name
+     */
+    public boolean claim(ClientHandler client, String playerName) {
+        ClientHandler holder = byName.putIfAbsent(playerName, client);
+        return holder == null || holder == client;
+    }
+
+    public Collection<ClientHandler> getConnected() {
+        return Collections.unmodifiableSet(connected);
+    }
+}
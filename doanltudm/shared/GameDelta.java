@@ -0,0 +1,79 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * One change to a {@link GameState}, sent instead of the whole state.
+ *
+ * Each delta carries the state version it produces. A client applies it
+ * only on top of the version just before; anything else means it missed
+ * one and should ask for a snapshot (RESYNC).
+ */
+public class GameDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        SCORE, // username found number and earned points
+        BLOCK, // numbers blocked for everyone but username
+        UNBLOCK // all blocks lifted
+    }
+
+    private final long version;
+    private final Kind kind;
+    private final String username;
+    private final int number;
+    private final int points;
+    private final int[] numbers;
+    private final boolean gameComplete;
+
+    private GameDelta(long version, Kind kind, String username, int number, int points, int[] numbers,
+            boolean gameComplete) {
+        this.version = version;
+        this.kind = kind;
+        this.username = username;
+        this.number = number;
+        this.points = points;
+        this.numbers = numbers;
+        this.gameComplete = gameComplete;
+    }
+
+    public static GameDelta score(long version, String username, int number, int points, boolean gameComplete) {
+        return new GameDelta(version, Kind.SCORE, username, number, points, null, gameComplete);
+    }
+
+    public static GameDelta block(long version, String username, int[] numbers) {
+        return new GameDelta(version, Kind.BLOCK, username, 0, 0, numbers, false);
+    }
+
+    public static GameDelta unblock(long version) {
+        return new GameDelta(version, Kind.UNBLOCK, null, 0, 0, null, false);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public int[] getNumbers() {
+        return numbers;
+    }
+
+    public boolean isGameComplete() {
+        return gameComplete;
+    }
+}
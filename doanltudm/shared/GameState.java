@@ -1,17 +1,30 @@
 package shared;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * State of one match. The server owns the real copy. Clients get a full
+ * snapshot on join or RESYNC, then keep theirs current with the
+ * {@link GameDelta}s that the mutators return, see {@link #apply}.
+ */
 public class GameState implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
 
     private final Map<String, Integer> scores;
     private final Map<String, List<Integer>> playerNumbers;
-    private final Map<String, Set<Integer>> blockedNumbers;
+    private final Map<String, BitSet> blockedNumbers; // bit n set = n is blocked for the player
     private int[] gameNumbers;
+    // How many copies of each number are still to be found, indexed by number.
+    // Together with the counters this makes validation and completion O(1).
+    private final int[] remainingCounts = new int[GameFeatures.MAX_NUMBER + 1];
+    private int foundCount;
+    private int remainingCount;
     private boolean gameComplete;
+    private long version; // bumped by every change, deltas carry the version they produce
     private final Map<String, Long> lastMoveTime;
     private final Map<String, Integer> consecutiveMatches;
 
@@ -24,38 +37,50 @@ public class GameState implements Serializable {
         this.gameComplete = false;
     }
 
-    public void initializeGame(int playerCount) {
+    public synchronized void initializeGame(int playerCount) {
         gameNumbers = GameFeatures.generateGameNumbers(playerCount);
+        Arrays.fill(remainingCounts, 0);
+        for (int number : gameNumbers) {
+            remainingCounts[number]++;
+        }
+        foundCount = 0;
+        remainingCount = gameNumbers.length;
         gameComplete = false;
-        scores.clear();
-        playerNumbers.clear();
-        blockedNumbers.clear();
-        lastMoveTime.clear();
-        consecutiveMatches.clear();
+        // Players joined before the game starts, so keep them and reset their state
+        long now = System.currentTimeMillis();
+        scores.replaceAll((username, score) -> 0);
+        playerNumbers.values().forEach(List::clear);
+        blockedNumbers.values().forEach(BitSet::clear);
+        lastMoveTime.replaceAll((username, time) -> now);
+        consecutiveMatches.replaceAll((username, count) -> 0);
+        version++;
     }
 
     public synchronized void addPlayer(String username) {
         scores.put(username, 0);
         playerNumbers.put(username, new ArrayList<>());
-        blockedNumbers.put(username, new HashSet<>());
+        blockedNumbers.put(username, new BitSet(GameFeatures.MAX_NUMBER + 1));
         lastMoveTime.put(username, System.currentTimeMillis());
         consecutiveMatches.put(username, 0);
+        version++;
     }
 
+    /**
+     * True if the number is on the board and not all of its copies have been found
+     */
     public synchronized boolean isValidNumber(int number) {
         if (number < GameFeatures.MIN_NUMBER || number > GameFeatures.MAX_NUMBER) {
             return false;
         }
-
-        for (int gameNumber : gameNumbers) {
-            if (gameNumber == number) {
-                return true;
-            }
-        }
-        return false;
+        return remainingCounts[number] > 0;
     }
 
-    public synchronized void updateScore(String username, int points) {
+    /**
+     * Records that the player found one copy of the number and scores it.
+     * Call only after {@link #isValidNumber} accepted the number. Returns
+     * the change for the other copies of the state.
+     */
+    public synchronized GameDelta updateScore(String username, int number, int points) {
         long currentTime = System.currentTimeMillis();
         long timeSinceLastMove = currentTime - lastMoveTime.getOrDefault(username, currentTime);
 
@@ -72,31 +97,82 @@ public class GameState implements Serializable {
         consecutiveMatches.put(username, currentConsecutive + 1);
 
         // Update score
-        scores.merge(username, points, Integer::sum);
+        recordFind(username, number, points);
         lastMoveTime.put(username, currentTime);
 
         // Check if game is complete
         checkGameCompletion();
+        return GameDelta.score(++version, username, number, points, gameComplete);
+    }
+
+    private void recordFind(String username, int number, int points) {
+        remainingCounts[number]--;
+        foundCount++;
+        remainingCount--;
+        playerNumbers.computeIfAbsent(username, key -> new ArrayList<>()).add(number);
+        scores.merge(username, points, Integer::sum);
+    }
+
+    private void checkGameCompletion() {
+        gameComplete = remainingCount == 0;
+    }
+
+    /**
+     * Blocks the numbers for every player except the given one
+     */
+    public synchronized GameDelta blockNumbersForOthers(String username, Set<Integer> numbers) {
+        int[] blocked = numbers.stream().mapToInt(Integer::intValue).toArray();
+        blockForOthers(username, blocked);
+        return GameDelta.block(++version, username, blocked);
     }
 
-    private synchronized void checkGameCompletion() {
-        int totalFound = playerNumbers.values().stream()
-                .mapToInt(List::size)
-                .sum();
+    private void blockForOthers(String username, int[] numbers) {
+        blockedNumbers.forEach((player, blocked) -> {
+            if (!player.equals(username)) {
+                for (int number : numbers) {
+                    blocked.set(number);
+                }
+            }
+        });
+    }
 
-        gameComplete = totalFound >= gameNumbers.length;
+    public synchronized GameDelta unblockAll() {
+        blockedNumbers.values().forEach(BitSet::clear);
+        return GameDelta.unblock(++version);
     }
 
-    public synchronized void blockNumbers(String username, Set<Integer> numbers) {
-        blockedNumbers.get(username).addAll(numbers);
+    /**
+     * Applies a change made to the server's copy. Returns false, leaving the
+     * state alone, if the delta doesn't follow on from this version; the
+     * caller should then ask for a snapshot.
+     */
+    public synchronized boolean apply(GameDelta delta) {
+        if (delta.getVersion() != version + 1) {
+            return false;
+        }
+        switch (delta.getKind()) {
+            case SCORE:
+                recordFind(delta.getUsername(), delta.getNumber(), delta.getPoints());
+                gameComplete = delta.isGameComplete();
+                break;
+            case BLOCK:
+                blockForOthers(delta.getUsername(), delta.getNumbers());
+                break;
+            case UNBLOCK:
+                blockedNumbers.values().forEach(BitSet::clear);
+                break;
+        }
+        version = delta.getVersion();
+        return true;
     }
 
-    public synchronized void unblockNumbers(String username) {
-        blockedNumbers.get(username).clear();
+    public synchronized long getVersion() {
+        return version;
     }
 
     public synchronized boolean isNumberBlocked(int number, String username) {
-        return blockedNumbers.get(username).contains(number);
+        BitSet blocked = blockedNumbers.get(username);
+        return blocked != null && number >= 0 && blocked.get(number);
     }
 
     public synchronized String getWinner() {
@@ -122,14 +198,33 @@ public class GameState implements Serializable {
         return new ArrayList<>(playerNumbers.getOrDefault(username, new ArrayList<>()));
     }
 
+    /**
+     * Numbers blocked for the player, or for anyone if username is null
+     */
     public synchronized Set<Integer> getBlockedNumbers(String username) {
-        return new HashSet<>(blockedNumbers.getOrDefault(username, new HashSet<>()));
+        BitSet blocked = new BitSet();
+        if (username == null) {
+            blockedNumbers.values().forEach(blocked::or);
+        } else if (blockedNumbers.containsKey(username)) {
+            blocked.or(blockedNumbers.get(username));
+        }
+        Set<Integer> numbers = new HashSet<>();
+        blocked.stream().forEach(numbers::add);
+        return numbers;
     }
 
     public synchronized int getTotalNumbers() {
         return gameNumbers.length;
     }
 
+    public synchronized int getFoundCount() {
+        return foundCount;
+    }
+
+    public synchronized int getRemainingCount() {
+        return remainingCount;
+    }
+
     public synchronized Map<String, Integer> getConsecutiveMatches() {
         return new HashMap<>(consecutiveMatches);
     }
@@ -141,4 +236,9 @@ public class GameState implements Serializable {
     public synchronized void resetConsecutiveMatches(String username) {
         consecutiveMatches.put(username, 0);
     }
+
+    // A snapshot is written under the lock so it matches exactly one version
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
 }
@@ -1,7 +1,14 @@
 package client;
 
 import common.ConnectionHandler;
+import common.IncorrectNumber;
+import common.LeaderboardEntry;
 import common.Message;
+import common.MessageDispatcher;
+import common.MessageKind;
+import common.NumberFound;
+import common.PowerupEffect;
+import common.TimeUpdate;
 import common.User;
 
 import javax.swing.*;
@@ -19,6 +26,20 @@ public class GameClient {
     private static final String DEFAULT_SERVER_HOST = "localhost";
     private static final int DEFAULT_SERVER_PORT = 12345;
 
+    // Handlers run on the Swing event thread
+    private static final MessageDispatcher<GameClient> DISPATCHER = new MessageDispatcher<GameClient>()
+            .on(MessageKind.LOGIN_RESPONSE, GameClient::handleLoginResponse)
+            .on(MessageKind.START_CANCELED, GameClient::handleStartCanceled)
+            .on(MessageKind.PLAYER_JOINED, GameClient::handlePlayerJoined)
+            .on(MessageKind.START_GAME, GameClient::handleStartGame)
+            .on(MessageKind.NUMBER_FOUND, GameClient::handleNumberFound)
+            .on(MessageKind.TIME_UPDATE, GameClient::handleTimeUpdate)
+            .on(MessageKind.LUCKY_NUMBER, GameClient::handleLuckyNumber)
+            .on(MessageKind.POWERUP_EFFECT, GameClient::handlePowerupEffect)
+            .on(MessageKind.GAME_OVER, GameClient::handleGameOver)
+            .on(MessageKind.INCORRECT_NUMBER, GameClient::handleIncorrectNumber)
+            .on(MessageKind.UPDATE_LEADERBOARD, GameClient::handleLeaderboardUpdate);
+
     private final String serverHost;
     private final int serverPort;
 
@@ -30,6 +51,7 @@ public class GameClient {
     // Store game details received on login
     private int initialPlayerCount = 0;
     private int maxPlayers = 0;
+    private long gameStartTime = 0; // when START_GAME arrived, clicks are stamped relative to it
 
     private LoginFrame loginFrame;
     private LobbyFrame lobbyFrame;
@@ -50,7 +72,7 @@ public class GameClient {
             // Connect to the server
             System.out.println("Connecting to server at " + serverHost + ":" + serverPort);
             Socket socket = new Socket(serverHost, serverPort);
-            connection = new ConnectionHandler(socket);
+            connection = ConnectionHandler.connect(socket);
             isConnected = true;
             System.out.println("Connected successfully to " + serverHost);
 
@@ -105,7 +127,7 @@ public class GameClient {
             lobbyFrame = new LobbyFrame(this, currentUser);
 
             // Update leaderboard
-            List<User> leaderboard = (List<User>) message.get("leaderboard");
+            List<LeaderboardEntry> leaderboard = (List<LeaderboardEntry>) message.get("leaderboard");
             lobbyFrame.updateLeaderboard(leaderboard);
 
             lobbyFrame.setVisible(true);
@@ -119,109 +141,123 @@ public class GameClient {
     }
 
     private void handleServerMessage(Message message) {
+        if (!DISPATCHER.handles(message)) {
+            System.err.println("Unknown message type: " + message.getType());
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
-            String type = message.getType();
-
-            switch (type) {
-                case Message.LOGIN_RESPONSE:
-                    handleLoginResponse(message);
-                    break;
-                case Message.START_CANCELED:
-                    if (gameFrame != null) {
-                        gameFrame.dispose();
-                        gameFrame = null;
-                    }
-                    if (lobbyFrame != null) {
-                        lobbyFrame.resetFindGameButton();
-                        lobbyFrame.setVisible(true);
-                    }
-                    JOptionPane.showMessageDialog(lobbyFrame,
-                            "Game start canceled. Returning to lobby.",
-                            "Info",
-                            JOptionPane.INFORMATION_MESSAGE);
-                    break;
-                case "PLAYER_JOINED":
-                    // Show waiting UI upon first player join
-                    if (gameFrame == null) {
-                        gameFrame = new GameFrame(this, currentUser);
-                        if (lobbyFrame != null) {
-                            lobbyFrame.setVisible(false);
-                        }
-                        gameFrame.showWaitingScreen();
-                        gameFrame.setVisible(true);
-                    }
-                    gameFrame.updateWaitingStatus(message);
-                    break;
-                case Message.START_GAME:
-                    // Hide lobby and start the game on the existing GameFrame
-                    if (lobbyFrame != null) {
-                        lobbyFrame.setVisible(false);
-                    }
-                    if (gameFrame == null) {
-                        gameFrame = new GameFrame(this, currentUser);
-                        gameFrame.setVisible(true);
-                    }
-                    gameFrame.startGame(message);
-                    break;
-                case Message.NUMBER_FOUND:
-                    if (gameFrame != null) {
-                        gameFrame.handleNumberFound(message);
-                    }
-                    break;
-                case "TIME_UPDATE":
-                    if (gameFrame != null) {
-                        gameFrame.updateTime(message.getInt("remainingSeconds"));
-                    }
-                    break;
-                case "LUCKY_NUMBER":
-                    if (gameFrame != null) {
-                        gameFrame.updatePowerups(message.getInt("count"));
-                    }
-                    break;
-                case Message.POWERUP_EFFECT:
-                    if (gameFrame != null) {
-                        gameFrame.handlePowerupEffect(message);
-                    }
-                    break;
-                case Message.GAME_OVER:
-                    if (gameFrame != null) {
-                        // Handle game over in the game frame first (shows results dialog)
-                        gameFrame.handleGameOver(message);
-
-                        // Close the game frame
-                        gameFrame.dispose();
-                        gameFrame = null;
-
-                        // Update lobby with latest leaderboard data from the GAME_OVER message
-                        if (lobbyFrame != null) {
-                            // Get updated leaderboard from the message
-                            @SuppressWarnings("unchecked")
-                            List<User> updatedLeaderboard = (List<User>) message.get("leaderboard");
-                            if (updatedLeaderboard != null) {
-                                lobbyFrame.updateLeaderboard(updatedLeaderboard);
-                            }
-
-                            // Reset the Find Game button and show the lobby
-                            lobbyFrame.resetFindGameButton();
-                            lobbyFrame.setVisible(true);
-                        }
-                    }
-                    break;
-                case "INCORRECT_NUMBER":
-                    if (gameFrame != null) {
-                        gameFrame.handleIncorrectNumber(message.getInt("number"));
-                    }
-                    break;
-                case Message.UPDATE_LEADERBOARD:
-                    // Update leaderboard in lobby if visible
-                    if (lobbyFrame != null && lobbyFrame.isVisible()) {
-                        lobbyFrame.updateLeaderboard((List<User>) message.get("leaderboard"));
-                    }
-                    break;
+            try {
+                DISPATCHER.dispatch(this, message);
+            } catch (IOException e) {
+                System.err.println("Error handling " + message.getType() + ": " + e.getMessage());
             }
         });
     }
 
+    private void handleStartCanceled(Message message) {
+        if (gameFrame != null) {
+            gameFrame.dispose();
+            gameFrame = null;
+        }
+        if (lobbyFrame != null) {
+            lobbyFrame.resetFindGameButton();
+            lobbyFrame.setVisible(true);
+        }
+        JOptionPane.showMessageDialog(lobbyFrame,
+                "Game start canceled. Returning to lobby.",
+                "Info",
+                JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void handlePlayerJoined(Message message) {
+        // Show waiting UI upon first player join
+        if (gameFrame == null) {
+            gameFrame = new GameFrame(this, currentUser);
+            if (lobbyFrame != null) {
+                lobbyFrame.setVisible(false);
+            }
+            gameFrame.showWaitingScreen();
+            gameFrame.setVisible(true);
+        }
+        gameFrame.updateWaitingStatus(message);
+    }
+
+    private void handleStartGame(Message message) {
+        gameStartTime = System.currentTimeMillis();
+        // Hide lobby and start the game on the existing GameFrame
+        if (lobbyFrame != null) {
+            lobbyFrame.setVisible(false);
+        }
+        if (gameFrame == null) {
+            gameFrame = new GameFrame(this, currentUser);
+            gameFrame.setVisible(true);
+        }
+        gameFrame.startGame(message);
+    }
+
+    private void handleNumberFound(Message message) {
+        if (gameFrame != null) {
+            gameFrame.handleNumberFound((NumberFound) message.getPayload());
+        }
+    }
+
+    private void handleTimeUpdate(Message message) {
+        if (gameFrame != null) {
+            gameFrame.updateTime(((TimeUpdate) message.getPayload()).getRemainingSeconds());
+        }
+    }
+
+    private void handleLuckyNumber(Message message) {
+        if (gameFrame != null) {
+            gameFrame.updatePowerups(message.getInt("count"));
+        }
+    }
+
+    private void handlePowerupEffect(Message message) {
+        if (gameFrame != null) {
+            gameFrame.handlePowerupEffect((PowerupEffect) message.getPayload());
+        }
+    }
+
+    private void handleGameOver(Message message) {
+        if (gameFrame != null) {
+            // Handle game over in the game frame first (shows results dialog)
+            gameFrame.handleGameOver(message);
+
+            // Close the game frame
+            gameFrame.dispose();
+            gameFrame = null;
+
+            // Update lobby with latest leaderboard data from the GAME_OVER message
+            if (lobbyFrame != null) {
+                // Get updated leaderboard from the message
+                @SuppressWarnings("unchecked")
+                List<LeaderboardEntry> updatedLeaderboard = (List<LeaderboardEntry>) message.get("leaderboard");
+                if (updatedLeaderboard != null) {
+                    lobbyFrame.updateLeaderboard(updatedLeaderboard);
+                }
+
+                // Reset the Find Game button and show the lobby
+                lobbyFrame.resetFindGameButton();
+                lobbyFrame.setVisible(true);
+            }
+        }
+    }
+
+    private void handleIncorrectNumber(Message message) {
+        if (gameFrame != null) {
+            gameFrame.handleIncorrectNumber(((IncorrectNumber) message.getPayload()).getNumber());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleLeaderboardUpdate(Message message) {
+        // Update leaderboard in lobby if visible
+        if (lobbyFrame != null && lobbyFrame.isVisible()) {
+            lobbyFrame.updateLeaderboard((List<LeaderboardEntry>) message.get("leaderboard"));
+        }
+    }
+
     public void sendLogin(String username, String password) {
         try {
             Message loginMsg = new Message(Message.LOGIN);
@@ -273,9 +309,8 @@ public class GameClient {
 
     public void sendNumberFound(int number) {
         try {
-            Message foundMsg = new Message(Message.NUMBER_FOUND);
-            foundMsg.put("number", number);
-            connection.sendMessage(foundMsg);
+            int clientTime = (int) (System.currentTimeMillis() - gameStartTime);
+            connection.sendMessage(new Message(NumberFound.click(number, clientTime)));
         } catch (IOException e) {
             System.err.println("Error sending number found: " + e.getMessage());
         }
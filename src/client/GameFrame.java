@@ -1,6 +1,8 @@
 package client;
 
 import common.Message;
+import common.NumberFound;
+import common.PowerupEffect;
 import common.User;
 
 import javax.swing.*;
@@ -166,8 +168,8 @@ public class GameFrame extends JFrame {
         panel.add(gridPanel, BorderLayout.CENTER);
 
         // Set up action listeners
-        priorityButton.addActionListener(e -> usePowerup("PRIORITY"));
-        blockButton.addActionListener(e -> usePowerup("BLOCK_NUMBERS"));
+        priorityButton.addActionListener(e -> usePowerup(PowerupEffect.PRIORITY));
+        blockButton.addActionListener(e -> usePowerup(PowerupEffect.BLOCK_NUMBERS));
 
         return panel;
     }
@@ -312,14 +314,13 @@ public class GameFrame extends JFrame {
         numberButtons = new JButton[rows][cols];
 
         // Get the shuffled numbers from the server's message
-        @SuppressWarnings("unchecked")
-        List<Integer> numbers = (List<Integer>) message.get("shuffledNumbers");
+        int[] numbers = (int[]) message.get("shuffledNumbers");
 
         int numberIndex = 0;
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                if (numberIndex < numbers.size()) {
-                    final int number = numbers.get(numberIndex++);
+                if (numberIndex < numbers.length) {
+                    final int number = numbers[numberIndex++];
                     JButton button = new JButton(String.valueOf(number));
                     button.setFont(new Font("Arial", Font.BOLD, 14));
                     button.setPreferredSize(new Dimension(60, 60));
@@ -390,10 +391,10 @@ public class GameFrame extends JFrame {
         timeLabel.setText(String.format("Time: %02d:%02d", minutes, secs));
     }
 
-    public void handleNumberFound(Message message) {
-        int number = message.getInt("number");
-        int playerId = message.getInt("playerId");
-        targetNumber = message.getInt("nextTarget");
+    public void handleNumberFound(NumberFound found) {
+        int number = found.getNumber();
+        int playerId = found.getPlayerId();
+        targetNumber = found.getNextTarget();
 
         // Record the found number
         foundNumbers.put(number, playerColors.get(playerId));
@@ -475,12 +476,12 @@ public class GameFrame extends JFrame {
         });
     }
 
-    public void handlePowerupEffect(Message message) {
-        String type = message.getString("type");
-        int playerId = message.getInt("playerId");
-        int durationMs = message.getInt("durationMs");
+    public void handlePowerupEffect(PowerupEffect effect) {
+        String type = effect.getType();
+        int playerId = effect.getPlayerId();
+        int durationMs = effect.getDurationMs();
 
-        if ("BLOCK_NUMBERS".equals(type) && playerId != currentUser.getId()) {
+        if (PowerupEffect.BLOCK_NUMBERS.equals(type) && playerId != currentUser.getId()) {
             SwingUtilities.invokeLater(() -> {
                 long endTime = System.currentTimeMillis() + durationMs;
                 java.util.List<Integer> availableNumbers = new java.util.ArrayList<>();
@@ -509,7 +510,7 @@ public class GameFrame extends JFrame {
                     ((Timer) e.getSource()).stop();
                 }).start();
             });
-        } else if ("PRIORITY".equals(type) && playerId != currentUser.getId()) {
+        } else if (PowerupEffect.PRIORITY.equals(type) && playerId != currentUser.getId()) {
             // Other player has priority
             SwingUtilities.invokeLater(() -> {
                 statusLabel.setText("Game Status: " + players.get(playerId) + " has priority!");
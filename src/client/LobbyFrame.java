@@ -1,5 +1,6 @@
 package client;
 
+import common.LeaderboardEntry;
 import common.User;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -115,7 +116,7 @@ public class LobbyFrame extends JFrame {
         JOptionPane.showMessageDialog(this, info.toString(), "User Information", JOptionPane.INFORMATION_MESSAGE);
     }
 
-    public void updateLeaderboard(List<User> leaderboard) {
+    public void updateLeaderboard(List<LeaderboardEntry> leaderboard) {
         SwingUtilities.invokeLater(() -> {
             // Clear current table
             while (leaderboardModel.getRowCount() > 0) {
@@ -123,9 +124,9 @@ public class LobbyFrame extends JFrame {
             }
 
             // Add users to leaderboard
-            for (User user : leaderboard) {
-                String winRatio = String.format("%.2f", user.getWinRate());
-                Object[] row = { user.getUsername(), winRatio, user.getTotalScore() };
+            for (LeaderboardEntry entry : leaderboard) {
+                String winRatio = String.format("%.2f", entry.getWinRate());
+                Object[] row = { entry.getUsername(), winRatio, entry.getTotalScore() };
                 leaderboardModel.addRow(row);
             }
         });
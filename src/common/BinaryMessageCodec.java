@@ -0,0 +1,399 @@
+package common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec.
+ *
+ * Body layout: the one-byte opcode of the message's {@link MessageKind}, a
+ * presence mask with one bit per schema field, the present schema fields in
+ * schema order, then a count of extra entries. Schema fields are written by
+ * their declared type with no key or type tags. Anything outside the schema
+ * (or of an unexpected runtime type) goes into the extras as a key tag plus a
+ * tagged value; known keys use a single byte index into the table below,
+ * anything else a literal string after a 0 tag. Integers use zig-zag varints,
+ * so a client click (NUMBER_FOUND with one number) is 5-6 bytes including
+ * the length prefix.
+ *
+ * Kinds with a typed {@link Payload} skip the mask and extras: the opcode is
+ * followed directly by the payload's own primitive encoding.
+ *
+ * The key table is part of the protocol: only ever append to it.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte ID = 1;
+    public static final BinaryMessageCodec INSTANCE = new BinaryMessageCodec();
+
+    private static final String[] KEYS = {
+            "username", "password", "email", "sex", "dateOfBirth", "success", "error", "user",
+            "leaderboard", "gridSize", "duration", "targetNumber", "players", "shuffledNumbers",
+            "initialPowerups", "number", "playerId", "nextTarget", "remainingSeconds", "count",
+            "type", "durationMs", "winnerId", "scores", "message", "currentPlayers", "maxPlayers",
+            "color", "id", "initialPlayerCount"
+    };
+
+    private static final Map<String, Integer> KEY_TAGS = indexOf(KEYS);
+
+    // Value tags
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int STRING = 5;
+    private static final int DATE = 6;
+    private static final int USER = 7;
+    private static final int LIST = 8;
+    private static final int MAP = 9;
+    private static final int OBJECT = 10; // Java serialization escape hatch for unknown types
+
+    private BinaryMessageCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void encode(Message message, DataOutputStream out) throws IOException {
+        MessageKind kind = message.getKind();
+        if (kind == null) {
+            throw new NotSerializableException("Message type has no opcode: " + message.getType());
+        }
+        out.writeByte(kind.getOpcode());
+        if (kind.hasPayload()) {
+            Payload payload = message.getPayload();
+            if (payload == null) {
+                throw new NotSerializableException(kind + " must be sent with a typed payload");
+            }
+            payload.write(out);
+            return;
+        }
+
+        Map<String, Object> data = message.getData();
+        int mask = 0;
+        for (int i = 0; i < kind.getFieldCount(); i++) {
+            MessageKind.Field field = kind.getField(i);
+            if (field.getType().accepts(data.get(field.getKey()))) {
+                mask |= 1 << i;
+            }
+        }
+        WireFormat.writeVarInt(out, mask);
+        for (int i = 0; i < kind.getFieldCount(); i++) {
+            if ((mask & (1 << i)) != 0) {
+                MessageKind.Field field = kind.getField(i);
+                writeField(out, field.getType(), data.get(field.getKey()));
+            }
+        }
+
+        int extras = data.size() - Integer.bitCount(mask);
+        WireFormat.writeVarInt(out, extras);
+        if (extras > 0) {
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                int index = kind.indexOf(entry.getKey());
+                if (index >= 0 && (mask & (1 << index)) != 0) {
+                    continue;
+                }
+                writeTagged(out, KEY_TAGS, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Message decode(DataInputStream in) throws IOException, ClassNotFoundException {
+        return decode(in, null);
+    }
+
+    @Override
+    public Message decode(DataInputStream in, ReusableMessages reusable)
+            throws IOException, ClassNotFoundException {
+        int opcode = in.readUnsignedByte();
+        MessageKind kind = MessageKind.forOpcode(opcode);
+        if (kind == null) {
+            throw new StreamCorruptedException("Unknown opcode: " + opcode);
+        }
+        if (kind.hasPayload()) {
+            Message message = reusable != null ? reusable.get(kind) : new Message(kind.newPayload());
+            message.getPayload().read(in);
+            return message;
+        }
+        Message message = new Message(kind);
+
+        int mask = WireFormat.readVarInt(in);
+        if ((mask >>> kind.getFieldCount()) != 0) {
+            throw new StreamCorruptedException("Invalid field mask for " + kind);
+        }
+        for (int i = 0; i < kind.getFieldCount(); i++) {
+            if ((mask & (1 << i)) != 0) {
+                MessageKind.Field field = kind.getField(i);
+                message.put(field.getKey(), readField(in, field.getType()));
+            }
+        }
+
+        int extras = WireFormat.readVarInt(in);
+        for (int i = 0; i < extras; i++) {
+            String key = readTagged(in, KEYS);
+            message.put(key, readValue(in));
+        }
+        return message;
+    }
+
+    private static void writeField(DataOutputStream out, MessageKind.FieldType type, Object value)
+            throws IOException {
+        switch (type) {
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case INT:
+                WireFormat.writeSignedVarInt(out, (Integer) value);
+                break;
+            case LONG:
+                WireFormat.writeSignedVarLong(out, (Long) value);
+                break;
+            case STRING:
+                out.writeUTF((String) value);
+                break;
+            case DATE:
+                out.writeLong(((Date) value).getTime());
+                break;
+            case USER:
+                writeUser(out, (User) value);
+                break;
+            case LEADERBOARD:
+                if (value instanceof EncodedLeaderboard) {
+                    // Packed once for every message that shares it
+                    ((EncodedLeaderboard) value).writeTo(out);
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                List<LeaderboardEntry> entries = (List<LeaderboardEntry>) value;
+                LeaderboardEntry.writeAll(out, entries);
+                break;
+            case INT_ARRAY:
+                int[] array = (int[]) value;
+                WireFormat.writeVarInt(out, array.length);
+                for (int element : array) {
+                    WireFormat.writeSignedVarInt(out, element);
+                }
+                break;
+            default:
+                writeValue(out, value);
+                break;
+        }
+    }
+
+    private static Object readField(DataInputStream in, MessageKind.FieldType type)
+            throws IOException, ClassNotFoundException {
+        switch (type) {
+            case BOOLEAN:
+                return in.readBoolean();
+            case INT:
+                return WireFormat.readSignedVarInt(in);
+            case LONG:
+                return WireFormat.readSignedVarLong(in);
+            case STRING:
+                return in.readUTF();
+            case DATE:
+                return new Date(in.readLong());
+            case USER:
+                return readUser(in);
+            case LEADERBOARD:
+                return LeaderboardEntry.readAll(in);
+            case INT_ARRAY: {
+                int length = WireFormat.readVarInt(in);
+                WireFormat.checkFrameLength(length); // a corrupt length must not allocate a huge array
+                int[] array = new int[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = WireFormat.readSignedVarInt(in);
+                }
+                return array;
+            }
+            default:
+                return readValue(in);
+        }
+    }
+
+    private static void writeTagged(DataOutputStream out, Map<String, Integer> tags, String name)
+            throws IOException {
+        Integer tag = tags.get(name);
+        if (tag != null) {
+            WireFormat.writeVarInt(out, tag);
+        } else {
+            out.writeByte(0);
+            out.writeUTF(name);
+        }
+    }
+
+    private static String readTagged(DataInputStream in, String[] table) throws IOException {
+        int tag = WireFormat.readVarInt(in);
+        if (tag == 0) {
+            return in.readUTF();
+        }
+        if (tag > table.length) {
+            throw new StreamCorruptedException("Unknown tag: " + tag);
+        }
+        return table[tag - 1];
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            WireFormat.writeSignedVarInt(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            WireFormat.writeSignedVarLong(out, (Long) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof User) {
+            out.writeByte(USER);
+            writeUser(out, (User) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            WireFormat.writeVarInt(out, list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            WireFormat.writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Serializable) {
+            out.writeByte(OBJECT);
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(value);
+            objectOut.flush();
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return WireFormat.readSignedVarInt(in);
+            case LONG:
+                return WireFormat.readSignedVarLong(in);
+            case STRING:
+                return in.readUTF();
+            case DATE:
+                return new Date(in.readLong());
+            case USER:
+                return readUser(in);
+            case LIST: {
+                int size = WireFormat.readVarInt(in);
+                WireFormat.checkFrameLength(size); // a corrupt size must not allocate a huge list
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = WireFormat.readVarInt(in);
+                WireFormat.checkFrameLength(size);
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            case OBJECT:
+                return new ObjectInputStream(in).readObject();
+            default:
+                throw new StreamCorruptedException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        WireFormat.writeSignedVarInt(out, user.getId());
+        writeNullableString(out, user.getUsername());
+        writeNullableString(out, user.getPassword());
+        writeNullableString(out, user.getEmail());
+        writeNullableString(out, user.getSex());
+        Date dateOfBirth = user.getDateOfBirth();
+        out.writeBoolean(dateOfBirth != null);
+        if (dateOfBirth != null) {
+            out.writeLong(dateOfBirth.getTime());
+        }
+        WireFormat.writeVarInt(out, user.getGamesWon());
+        WireFormat.writeVarInt(out, user.getGamesLost());
+        WireFormat.writeSignedVarInt(out, user.getTotalScore());
+        out.writeInt(user.getPlayerColor());
+    }
+
+    private static User readUser(DataInputStream in) throws IOException {
+        User user = new User();
+        user.setId(WireFormat.readSignedVarInt(in));
+        user.setUsername(readNullableString(in));
+        user.setPassword(readNullableString(in));
+        user.setEmail(readNullableString(in));
+        user.setSex(readNullableString(in));
+        if (in.readBoolean()) {
+            user.setDateOfBirth(new Date(in.readLong()));
+        }
+        user.setGamesWon(WireFormat.readVarInt(in));
+        user.setGamesLost(WireFormat.readVarInt(in));
+        user.setTotalScore(WireFormat.readSignedVarInt(in));
+        user.setPlayerColor(in.readInt());
+        return user;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Map<String, Integer> indexOf(String[] table) {
+        Map<String, Integer> tags = new HashMap<>();
+        for (int i = 0; i < table.length; i++) {
+            tags.put(table[i], i + 1);
+        }
+        return tags;
+    }
+}
@@ -2,35 +2,165 @@ package common;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Utility class to handle sending and receiving objects through sockets
+ * Utility class to handle sending and receiving messages through sockets.
+ * Messages are framed by {@link WireFormat} and encoded with the codec
+ * agreed on during the connection handshake.
  */
-public class ConnectionHandler {
+public class ConnectionHandler implements MessageConnection {
     private final Socket socket;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final MessageCodec codec;
 
-    public ConnectionHandler(Socket socket) throws IOException {
+    // Serializes senders. Not synchronized: a virtual thread blocked in a
+    // socket write while holding a monitor would pin its carrier thread.
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    // Reused encode/decode buffers, guarded by the send lock and the reader thread respectively
+    private final ByteArrayOutputStream frameOut = new ByteArrayOutputStream(256);
+    private final DataOutputStream frameData = new DataOutputStream(frameOut);
+    private final FrameInputStream frameIn = new FrameInputStream();
+    private final DataInputStream frameReader = new DataInputStream(frameIn);
+    private byte[] readBuffer = new byte[256];
+
+    // Server side only: received messages are valid until the next receive
+    private final ReusableMessages reusable;
+
+    private ConnectionHandler(Socket socket, DataInputStream in, DataOutputStream out, MessageCodec codec,
+            ReusableMessages reusable) {
         this.socket = socket;
-        // Important: Create output stream first to avoid deadlock
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in = new ObjectInputStream(socket.getInputStream());
+        this.in = in;
+        this.out = out;
+        this.codec = codec;
+        this.reusable = reusable;
     }
 
-    public void sendMessage(Message message) throws IOException {
-        out.writeObject(message);
+    /**
+     * Client side: proposes the preferred codec and uses whatever the server accepts
+     */
+    public static ConnectionHandler connect(Socket socket) throws IOException {
+        return connect(socket, WireFormat.preferredCodec());
+    }
+
+    public static ConnectionHandler connect(Socket socket, MessageCodec preferred) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        WireFormat.writeHandshake(out, preferred.getId());
+        out.flush();
+
+        int accepted = WireFormat.readHandshake(in);
+        MessageCodec codec = WireFormat.codecForId(accepted);
+        if (codec == null) {
+            throw new StreamCorruptedException("Server selected unknown codec: " + accepted);
+        }
+        return new ConnectionHandler(socket, in, out, codec, null);
+    }
+
+    /**
+     * Server side: waits for the client's proposal and falls back to Java
+     * serialization if the proposed codec is unknown. Typed messages are
+     * decoded into reused instances, so each must be handled before the next
+     * {@link #receiveMessage()}.
+     */
+    public static ConnectionHandler accept(Socket socket) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        MessageCodec codec = WireFormat.codecForId(WireFormat.readHandshake(in));
+        if (codec == null) {
+            codec = SerializedMessageCodec.INSTANCE;
+        }
+
+        WireFormat.writeHandshake(out, codec.getId());
         out.flush();
+        return new ConnectionHandler(socket, in, out, codec, new ReusableMessages());
+    }
+
+    @Override
+    public void sendMessage(Message message) throws IOException {
+        sendLock.lock();
+        try {
+            frameOut.reset();
+            codec.encode(message, frameData);
+            frameData.flush();
+
+            WireFormat.writeVarInt(out, frameOut.size());
+            frameOut.writeTo(out);
+            out.flush();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage message) throws IOException {
+        sendLock.lock();
+        try {
+            message.writeTo(codec, out);
+            out.flush();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Buffers an encoded frame without flushing, so a writer draining a queue
+     * can push several frames to the socket with one {@link #flush()}
+     */
+    public void writeEncoded(EncodedMessage message) throws IOException {
+        sendLock.lock();
+        try {
+            message.writeTo(codec, out);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    public void flush() throws IOException {
+        sendLock.lock();
+        try {
+            out.flush();
+        } finally {
+            sendLock.unlock();
+        }
     }
 
     public Message receiveMessage() throws IOException, ClassNotFoundException {
-        return (Message) in.readObject();
+        int length = WireFormat.readVarInt(in);
+        WireFormat.checkFrameLength(length);
+        if (length > readBuffer.length) {
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        }
+        in.readFully(readBuffer, 0, length);
+
+        frameIn.reset(readBuffer, 0, length);
+        Message message = codec.decode(frameReader, reusable);
+        if (frameIn.available() != 0) {
+            throw new StreamCorruptedException("Trailing bytes in " + message.getType() + " frame");
+        }
+        return message;
+    }
+
+    @Override
+    public MessageCodec getCodec() {
+        return codec;
     }
 
+    @Override
     public boolean isConnected() {
         return socket != null && socket.isConnected() && !socket.isClosed();
     }
 
+    @Override
+    public String getRemoteAddress() {
+        return socket.getInetAddress().getHostAddress();
+    }
+
+    @Override
     public void close() {
         try {
             if (in != null)
@@ -47,4 +177,4 @@ public class ConnectionHandler {
     public Socket getSocket() {
         return socket;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only leaderboard whose rows are packed for the binary codec up
+ * front. The server hands the same instance to every message until the
+ * leaderboard changes, so the rows are encoded once rather than for every
+ * login and game over. Anywhere else it is an ordinary list; it serializes
+ * as a plain ArrayList.
+ */
+public final class EncodedLeaderboard extends AbstractList<LeaderboardEntry>
+        implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final LeaderboardEntry[] entries;
+    private final transient byte[] packed; // as written by LeaderboardEntry.writeAll
+
+    public EncodedLeaderboard(List<LeaderboardEntry> entries) {
+        this.entries = entries.toArray(new LeaderboardEntry[0]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + this.entries.length * 32);
+        try {
+            LeaderboardEntry.writeAll(new DataOutputStream(bytes), entries);
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+        this.packed = bytes.toByteArray();
+    }
+
+    @Override
+    public LeaderboardEntry get(int index) {
+        return entries[index];
+    }
+
+    @Override
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * Writes the same bytes as {@link LeaderboardEntry#writeAll} would
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.write(packed);
+    }
+
+    private Object writeReplace() {
+        return new ArrayList<>(this);
+    }
+}
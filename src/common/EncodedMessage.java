@@ -0,0 +1,45 @@
+package common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A message that is encoded at most once per codec and then shared by every
+ * recipient. Used for broadcasts so a GAME_OVER with the full leaderboard is
+ * not re-encoded for each player.
+ */
+public class EncodedMessage {
+    private final Message message;
+
+    // Complete frames (length prefix included) indexed by codec id, filled lazily
+    private final byte[][] frames = new byte[WireFormat.CODEC_COUNT][];
+
+    public EncodedMessage(Message message) {
+        this.message = message;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns a read-only view of the encoded frame positioned at its start
+     */
+    public ByteBuffer frame(MessageCodec codec) throws IOException {
+        return ByteBuffer.wrap(frameBytes(codec)).asReadOnlyBuffer();
+    }
+
+    public void writeTo(MessageCodec codec, OutputStream out) throws IOException {
+        out.write(frameBytes(codec));
+    }
+
+    private synchronized byte[] frameBytes(MessageCodec codec) throws IOException {
+        byte[] frame = frames[codec.getId()];
+        if (frame == null) {
+            frame = new FrameEncoder().encode(codec, message);
+            frames[codec.getId()] = frame;
+        }
+        return frame;
+    }
+}
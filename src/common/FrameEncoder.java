@@ -0,0 +1,27 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes messages into complete frames (length prefix followed by the body)
+ * using a reusable scratch buffer. Not thread-safe.
+ */
+public class FrameEncoder {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    private final DataOutputStream bodyData = new DataOutputStream(body);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+    private final DataOutputStream frameData = new DataOutputStream(frame);
+
+    public byte[] encode(MessageCodec codec, Message message) throws IOException {
+        body.reset();
+        codec.encode(message, bodyData);
+        bodyData.flush();
+
+        frame.reset();
+        WireFormat.writeVarInt(frameData, body.size());
+        body.writeTo(frame);
+        return frame.toByteArray();
+    }
+}
@@ -0,0 +1,20 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * ByteArrayInputStream that can be pointed at a new frame without allocating
+ */
+public class FrameInputStream extends ByteArrayInputStream {
+
+    public FrameInputStream() {
+        super(new byte[0]);
+    }
+
+    public void reset(byte[] data, int offset, int length) {
+        this.buf = data;
+        this.pos = offset;
+        this.count = offset + length;
+        this.mark = offset;
+    }
+}
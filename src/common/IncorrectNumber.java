@@ -0,0 +1,45 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * INCORRECT_NUMBER payload, sent only to the player who clicked
+ */
+public final class IncorrectNumber implements Payload {
+    private static final long serialVersionUID = 1L;
+
+    private int number;
+
+    IncorrectNumber() {
+    }
+
+    public IncorrectNumber(int number) {
+        this.number = number;
+    }
+
+    @Override
+    public MessageKind getKind() {
+        return MessageKind.INCORRECT_NUMBER;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WireFormat.writeSignedVarInt(out, number);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        number = WireFormat.readSignedVarInt(in);
+    }
+
+    @Override
+    public String toString() {
+        return "{number=" + number + "}";
+    }
+}
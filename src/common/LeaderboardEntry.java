@@ -0,0 +1,96 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only leaderboard row sent to clients instead of a full {@link User},
+ * so leaderboards carry no passwords or personal details.
+ */
+public final class LeaderboardEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int rank;
+    private final int id;
+    private final String username;
+    private final int gamesWon;
+    private final int gamesLost;
+    private final int totalScore;
+
+    public LeaderboardEntry(int rank, int id, String username, int gamesWon, int gamesLost, int totalScore) {
+        this.rank = rank;
+        this.id = id;
+        this.username = username;
+        this.gamesWon = gamesWon;
+        this.gamesLost = gamesLost;
+        this.totalScore = totalScore;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getGamesWon() {
+        return gamesWon;
+    }
+
+    public int getGamesLost() {
+        return gamesLost;
+    }
+
+    public int getTotalScore() {
+        return totalScore;
+    }
+
+    public double getWinRate() {
+        int totalGames = gamesWon + gamesLost;
+        if (totalGames == 0)
+            return 0;
+        return (double) gamesWon / totalGames;
+    }
+
+    /**
+     * Writes the rows as one packed array: a count, then each row's fields
+     * back to back with no per-field tags
+     */
+    public static void writeAll(DataOutput out, List<LeaderboardEntry> entries) throws IOException {
+        WireFormat.writeVarInt(out, entries.size());
+        for (LeaderboardEntry entry : entries) {
+            WireFormat.writeVarInt(out, entry.rank);
+            WireFormat.writeSignedVarInt(out, entry.id);
+            out.writeUTF(entry.username);
+            WireFormat.writeVarInt(out, entry.gamesWon);
+            WireFormat.writeVarInt(out, entry.gamesLost);
+            WireFormat.writeSignedVarInt(out, entry.totalScore);
+        }
+    }
+
+    public static List<LeaderboardEntry> readAll(DataInput in) throws IOException {
+        int size = WireFormat.readVarInt(in);
+        WireFormat.checkFrameLength(size); // a corrupt size must not allocate a huge list
+        List<LeaderboardEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new LeaderboardEntry(WireFormat.readVarInt(in), WireFormat.readSignedVarInt(in),
+                    in.readUTF(), WireFormat.readVarInt(in), WireFormat.readVarInt(in),
+                    WireFormat.readSignedVarInt(in)));
+        }
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
+}
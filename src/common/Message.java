@@ -1,6 +1,7 @@
 package common;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,45 +26,90 @@ public class Message implements Serializable {
     public static final String ERROR = "ERROR";
     public static final String DECLINE_GAME = "DECLINE_GAME";
     public static final String START_CANCELED = "START_CANCELED";
+    public static final String PLAYER_JOINED = "PLAYER_JOINED";
+    public static final String TIME_UPDATE = "TIME_UPDATE";
+    public static final String LUCKY_NUMBER = "LUCKY_NUMBER";
+    public static final String INCORRECT_NUMBER = "INCORRECT_NUMBER";
 
     private String type;
-    private Map<String, Object> data;
+    private Map<String, Object> data; // allocated on first put
+    private Payload payload; // typed body for hot in-game kinds, instead of data
+
+    // Resolved from the type on first use; not part of the serialized form
+    private transient MessageKind kind;
 
     public Message(String type) {
         this.type = type;
-        this.data = new HashMap<>();
+    }
+
+    public Message(MessageKind kind) {
+        this(kind.getType());
+        this.kind = kind;
+    }
+
+    public Message(Payload payload) {
+        this(payload.getKind());
+        this.payload = payload;
     }
 
     public String getType() {
         return type;
     }
 
+    /**
+     * Returns the registered kind of this message, or null for an unknown type
+     */
+    public MessageKind getKind() {
+        if (kind == null) {
+            kind = MessageKind.forType(type);
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the opcode of this message's kind, or 0 for an unknown type
+     */
+    public int getOpcode() {
+        MessageKind kind = getKind();
+        return kind == null ? 0 : kind.getOpcode();
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
     public void put(String key, Object value) {
+        if (data == null) {
+            data = new HashMap<>();
+        }
         data.put(key, value);
     }
 
     public Object get(String key) {
-        return data.get(key);
+        return data == null ? null : data.get(key);
     }
 
     public boolean getBoolean(String key) {
-        return (Boolean) data.get(key);
+        return (Boolean) get(key);
     }
 
     public int getInt(String key) {
-        return (Integer) data.get(key);
+        return (Integer) get(key);
     }
 
     public String getString(String key) {
-        return (String) data.get(key);
+        return (String) get(key);
     }
 
+    /**
+     * Returns the key/value entries; read-only and empty if nothing was put
+     */
     public Map<String, Object> getData() {
-        return data;
+        return data == null ? Collections.emptyMap() : data;
     }
 
     @Override
     public String toString() {
-        return "Message [type=" + type + ", data=" + data + "]";
+        return "Message [type=" + type + ", data=" + (payload != null ? payload : getData()) + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the body of a single message frame.
+ * Implementations are stateless and shared by all connections; framing
+ * (length prefix and handshake) is handled by {@link WireFormat}.
+ */
+public interface MessageCodec {
+
+    /**
+     * Identifier sent during the connection handshake
+     */
+    byte getId();
+
+    String getName();
+
+    void encode(Message message, DataOutputStream out) throws IOException;
+
+    Message decode(DataInputStream in) throws IOException, ClassNotFoundException;
+
+    /**
+     * Decodes a frame, reusing the reader's message instances for typed kinds
+     * where the codec supports it. Codecs that cannot reuse fall back to
+     * {@link #decode(DataInputStream)}.
+     */
+    default Message decode(DataInputStream in, ReusableMessages reusable)
+            throws IOException, ClassNotFoundException {
+        return decode(in);
+    }
+}
@@ -0,0 +1,24 @@
+package common;
+
+import java.io.IOException;
+
+/**
+ * A connection that messages can be sent over, independent of the transport
+ */
+public interface MessageConnection {
+
+    void sendMessage(Message message) throws IOException;
+
+    /**
+     * Sends a message that may already have been encoded for another recipient
+     */
+    void sendEncoded(EncodedMessage message) throws IOException;
+
+    MessageCodec getCodec();
+
+    boolean isConnected();
+
+    String getRemoteAddress();
+
+    void close();
+}
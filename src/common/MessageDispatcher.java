@@ -0,0 +1,49 @@
+package common;
+
+import java.io.IOException;
+
+/**
+ * Opcode-indexed handler table. Looking up a handler is one array access,
+ * and messages without a registered kind or handler are rejected without
+ * any string comparison.
+ *
+ * @param <T> the object handlers act on, e.g. the client handler
+ */
+public final class MessageDispatcher<T> {
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(T target, Message message) throws IOException;
+    }
+
+    private final Handler<T>[] handlers;
+
+    @SuppressWarnings("unchecked")
+    public MessageDispatcher() {
+        handlers = (Handler<T>[]) new Handler<?>[MessageKind.MAX_OPCODE + 1];
+    }
+
+    public MessageDispatcher<T> on(MessageKind kind, Handler<T> handler) {
+        handlers[kind.getOpcode()] = handler;
+        return this;
+    }
+
+    /**
+     * Returns true if a handler is registered for the message's kind
+     */
+    public boolean handles(Message message) {
+        return handlers[message.getOpcode()] != null;
+    }
+
+    /**
+     * Runs the registered handler. Returns false if there is none.
+     */
+    public boolean dispatch(T target, Message message) throws IOException {
+        Handler<T> handler = handlers[message.getOpcode()];
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(target, message);
+        return true;
+    }
+}
@@ -0,0 +1,219 @@
+package common;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Registry of every message the client and server exchange.
+ *
+ * Each kind has a stable opcode, which is its one-byte type tag on the wire
+ * and its index into {@link MessageDispatcher} tables, and a schema of the
+ * fields it normally carries. {@link BinaryMessageCodec} writes schema fields
+ * without key or type tags. The hot in-game kinds instead carry a typed
+ * {@link Payload} with primitive fields and no map at all.
+ *
+ * Opcodes and field order are part of the protocol: append new kinds and
+ * fields, never reorder or reuse them.
+ */
+public enum MessageKind {
+    LOGIN(1, Message.LOGIN,
+            field("username", FieldType.STRING),
+            field("password", FieldType.STRING)),
+    REGISTER(2, Message.REGISTER,
+            field("username", FieldType.STRING),
+            field("password", FieldType.STRING),
+            field("email", FieldType.STRING),
+            field("sex", FieldType.STRING),
+            field("dateOfBirth", FieldType.DATE)),
+    LOGIN_RESPONSE(3, Message.LOGIN_RESPONSE,
+            field("success", FieldType.BOOLEAN),
+            field("user", FieldType.USER),
+            field("error", FieldType.STRING),
+            field("leaderboard", FieldType.LEADERBOARD),
+            field("initialPlayerCount", FieldType.INT),
+            field("maxPlayers", FieldType.INT)),
+    FIND_GAME(4, Message.FIND_GAME),
+    START_GAME(5, Message.START_GAME,
+            field("gridSize", FieldType.INT),
+            field("duration", FieldType.INT),
+            field("targetNumber", FieldType.INT),
+            field("players", FieldType.VALUE),
+            field("shuffledNumbers", FieldType.INT_ARRAY),
+            field("initialPowerups", FieldType.INT)),
+    NUMBER_FOUND(6, Message.NUMBER_FOUND, NumberFound::new),
+    NEXT_NUMBER(7, Message.NEXT_NUMBER),
+    GAME_OVER(8, Message.GAME_OVER,
+            field("winnerId", FieldType.INT),
+            field("scores", FieldType.VALUE),
+            field("duration", FieldType.INT),
+            field("leaderboard", FieldType.LEADERBOARD)),
+    USE_POWERUP(9, Message.USE_POWERUP,
+            field("type", FieldType.STRING)),
+    POWERUP_EFFECT(10, Message.POWERUP_EFFECT, PowerupEffect::new),
+    UPDATE_LEADERBOARD(11, Message.UPDATE_LEADERBOARD,
+            field("leaderboard", FieldType.LEADERBOARD)),
+    ERROR(12, Message.ERROR,
+            field("message", FieldType.STRING)),
+    DECLINE_GAME(13, Message.DECLINE_GAME),
+    START_CANCELED(14, Message.START_CANCELED),
+    PLAYER_JOINED(15, Message.PLAYER_JOINED,
+            field("playerId", FieldType.INT),
+            field("username", FieldType.STRING),
+            field("color", FieldType.INT),
+            field("currentPlayers", FieldType.INT),
+            field("maxPlayers", FieldType.INT)),
+    TIME_UPDATE(16, Message.TIME_UPDATE, TimeUpdate::new),
+    LUCKY_NUMBER(17, Message.LUCKY_NUMBER,
+            field("count", FieldType.INT)),
+    INCORRECT_NUMBER(18, Message.INCORRECT_NUMBER, IncorrectNumber::new);
+
+    /**
+     * How a schema field is written by the binary codec
+     */
+    public enum FieldType {
+        BOOLEAN(Boolean.class),
+        INT(Integer.class),
+        LONG(Long.class),
+        STRING(String.class),
+        DATE(Date.class),
+        USER(User.class),
+        VALUE(Object.class), // self-describing tagged value (lists, maps, ...)
+        LEADERBOARD(List.class), // packed List<LeaderboardEntry>
+        INT_ARRAY(int[].class);
+
+        private final Class<?> valueClass;
+
+        FieldType(Class<?> valueClass) {
+            this.valueClass = valueClass;
+        }
+
+        /**
+         * Values of any other runtime type are sent as untyped extras instead
+         */
+        public boolean accepts(Object value) {
+            if (value == null || !valueClass.isInstance(value)) {
+                return false;
+            }
+            if (this == LEADERBOARD) {
+                for (Object entry : (List<?>) value) {
+                    if (!(entry instanceof LeaderboardEntry)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    public static final class Field {
+        private final String key;
+        private final FieldType type;
+
+        private Field(String key, FieldType type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public FieldType getType() {
+            return type;
+        }
+    }
+
+    public static final int MAX_OPCODE = 18;
+
+    private static final MessageKind[] BY_OPCODE = new MessageKind[MAX_OPCODE + 1];
+    private static final Map<String, MessageKind> BY_TYPE = new HashMap<>();
+
+    static {
+        for (MessageKind kind : values()) {
+            BY_OPCODE[kind.opcode] = kind;
+            BY_TYPE.put(kind.type, kind);
+        }
+    }
+
+    private final int opcode;
+    private final String type;
+    private final Field[] fields;
+    private final Supplier<Payload> payloadFactory; // null for map based kinds
+
+    MessageKind(int opcode, String type, Field... fields) {
+        this.opcode = opcode;
+        this.type = type;
+        this.fields = fields;
+        this.payloadFactory = null;
+    }
+
+    MessageKind(int opcode, String type, Supplier<Payload> payloadFactory) {
+        this.opcode = opcode;
+        this.type = type;
+        this.fields = new Field[0];
+        this.payloadFactory = payloadFactory;
+    }
+
+    private static Field field(String key, FieldType type) {
+        return new Field(key, type);
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean hasPayload() {
+        return payloadFactory != null;
+    }
+
+    /**
+     * Returns an empty payload for a codec to read into, or null for map based kinds
+     */
+    public Payload newPayload() {
+        return payloadFactory == null ? null : payloadFactory.get();
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    public Field getField(int index) {
+        return fields[index];
+    }
+
+    /**
+     * Returns the schema index of the key, or -1 if it is not part of the schema
+     */
+    public int indexOf(String key) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].key.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the kind with the given opcode, or null if there is none
+     */
+    public static MessageKind forOpcode(int opcode) {
+        if (opcode <= 0 || opcode > MAX_OPCODE) {
+            return null;
+        }
+        return BY_OPCODE[opcode];
+    }
+
+    /**
+     * Returns the kind with the given type name, or null if it is not registered
+     */
+    public static MessageKind forType(String type) {
+        return BY_TYPE.get(type);
+    }
+}
@@ -0,0 +1,83 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * NUMBER_FOUND payload. Sent by a client as a click (the number and the
+ * client's game time) and broadcast by the server once the number is
+ * claimed (the number, finder and next target).
+ */
+public final class NumberFound implements Payload {
+    private static final long serialVersionUID = 1L;
+
+    private int number;
+    private int playerId;
+    private int nextTarget;
+    private int clientTime; // ms since the client saw START_GAME
+
+    NumberFound() {
+    }
+
+    public NumberFound(int number) {
+        this(number, 0, 0);
+    }
+
+    /**
+     * A click, stamped with the client's time into the game for tick arbitration
+     */
+    public static NumberFound click(int number, int clientTime) {
+        NumberFound click = new NumberFound(number);
+        click.clientTime = clientTime;
+        return click;
+    }
+
+    public NumberFound(int number, int playerId, int nextTarget) {
+        this.number = number;
+        this.playerId = playerId;
+        this.nextTarget = nextTarget;
+    }
+
+    @Override
+    public MessageKind getKind() {
+        return MessageKind.NUMBER_FOUND;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getNextTarget() {
+        return nextTarget;
+    }
+
+    public int getClientTime() {
+        return clientTime;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WireFormat.writeSignedVarInt(out, number);
+        WireFormat.writeSignedVarInt(out, playerId);
+        WireFormat.writeSignedVarInt(out, nextTarget);
+        WireFormat.writeVarInt(out, clientTime);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        number = WireFormat.readSignedVarInt(in);
+        playerId = WireFormat.readSignedVarInt(in);
+        nextTarget = WireFormat.readSignedVarInt(in);
+        clientTime = WireFormat.readVarInt(in);
+    }
+
+    @Override
+    public String toString() {
+        return "{number=" + number + ", playerId=" + playerId + ", nextTarget=" + nextTarget + "}";
+    }
+}
@@ -0,0 +1,21 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Typed body of a hot in-game message, used instead of the key/value map.
+ *
+ * Payloads are immutable to their users. {@link #read(DataInput)} is only
+ * called by codecs, either on a fresh instance or on a per-connection
+ * instance from {@link ReusableMessages}.
+ */
+public interface Payload extends Serializable {
+    MessageKind getKind();
+
+    void write(DataOutput out) throws IOException;
+
+    void read(DataInput in) throws IOException;
+}
@@ -0,0 +1,64 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * POWERUP_EFFECT payload: which powerup a player activated and for how long
+ */
+public final class PowerupEffect implements Payload {
+    private static final long serialVersionUID = 1L;
+
+    public static final String PRIORITY = "PRIORITY";
+    public static final String BLOCK_NUMBERS = "BLOCK_NUMBERS";
+
+    private String type;
+    private int playerId;
+    private int durationMs;
+
+    PowerupEffect() {
+    }
+
+    public PowerupEffect(String type, int playerId, int durationMs) {
+        this.type = type;
+        this.playerId = playerId;
+        this.durationMs = durationMs;
+    }
+
+    @Override
+    public MessageKind getKind() {
+        return MessageKind.POWERUP_EFFECT;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getDurationMs() {
+        return durationMs;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(type);
+        WireFormat.writeSignedVarInt(out, playerId);
+        WireFormat.writeVarInt(out, durationMs);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        type = in.readUTF();
+        playerId = WireFormat.readSignedVarInt(in);
+        durationMs = WireFormat.readVarInt(in);
+    }
+
+    @Override
+    public String toString() {
+        return "{type=" + type + ", playerId=" + playerId + ", durationMs=" + durationMs + "}";
+    }
+}
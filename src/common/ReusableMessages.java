@@ -0,0 +1,57 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * One reusable message per typed kind, owned by a single connection's reader.
+ *
+ * When a codec decodes into these, the returned message and its payload are
+ * overwritten by the next frame of the same kind, so the receiver must be
+ * done with them before reading on. The server's click path uses this to
+ * decode without allocating.
+ */
+public final class ReusableMessages {
+    private final Message[] messages = new Message[MessageKind.MAX_OPCODE + 1];
+
+    /**
+     * Returns this reader's message for the kind, or null if the kind has no payload
+     */
+    public Message get(MessageKind kind) {
+        Message message = messages[kind.getOpcode()];
+        if (message == null) {
+            Payload payload = kind.newPayload();
+            if (payload == null) {
+                return null;
+            }
+            message = new Message(payload);
+            messages[kind.getOpcode()] = message;
+        }
+        return message;
+    }
+
+    /**
+     * A copy of the message that later frames don't overwrite, for a receiver
+     * that has to hold on to it. Messages without a payload are never reused
+     * and come back as they are.
+     */
+    public static Message detach(Message message) {
+        Payload payload = message.getPayload();
+        if (payload == null) {
+            return message;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            payload.write(new DataOutputStream(bytes));
+            Payload copy = payload.getKind().newPayload();
+            copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            return new Message(copy);
+        } catch (IOException e) {
+            // In memory, doesn't fail
+            throw new IllegalStateException(e);
+        }
+    }
+}
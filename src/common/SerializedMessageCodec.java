@@ -0,0 +1,41 @@
+package common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Fallback codec that writes each message as a standalone Java serialization
+ * stream. Only used when the peer does not support the binary codec.
+ */
+public class SerializedMessageCodec implements MessageCodec {
+    public static final byte ID = 0;
+    public static final SerializedMessageCodec INSTANCE = new SerializedMessageCodec();
+
+    private SerializedMessageCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "serialized";
+    }
+
+    @Override
+    public void encode(Message message, DataOutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(message);
+        objectOut.flush();
+    }
+
+    @Override
+    public Message decode(DataInputStream in) throws IOException, ClassNotFoundException {
+        return (Message) new ObjectInputStream(in).readObject();
+    }
+}
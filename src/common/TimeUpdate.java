@@ -0,0 +1,45 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * TIME_UPDATE payload with the seconds left in the game
+ */
+public final class TimeUpdate implements Payload {
+    private static final long serialVersionUID = 1L;
+
+    private int remainingSeconds;
+
+    TimeUpdate() {
+    }
+
+    public TimeUpdate(int remainingSeconds) {
+        this.remainingSeconds = remainingSeconds;
+    }
+
+    @Override
+    public MessageKind getKind() {
+        return MessageKind.TIME_UPDATE;
+    }
+
+    public int getRemainingSeconds() {
+        return remainingSeconds;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WireFormat.writeVarInt(out, remainingSeconds);
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        remainingSeconds = WireFormat.readVarInt(in);
+    }
+
+    @Override
+    public String toString() {
+        return "{remainingSeconds=" + remainingSeconds + "}";
+    }
+}
@@ -0,0 +1,145 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Framing shared by client and server.
+ *
+ * A connection starts with a 4 byte handshake in each direction:
+ * 'F', 'N', protocol version, codec id. The client proposes a codec and the
+ * server answers with the codec it will use (Java serialization if it does
+ * not know the proposed one). After that every message is sent as a varint
+ * length followed by the codec-specific body.
+ */
+public final class WireFormat {
+    public static final int MAGIC_0 = 'F';
+    public static final int MAGIC_1 = 'N';
+    public static final int VERSION = 5; // 5: clicks carry the client's game time
+    public static final int HANDSHAKE_LENGTH = 4;
+    public static final int MAX_FRAME_LENGTH = 1 << 20; // 1 MB
+
+    // System property used by clients to pick a codec ("binary" or "serialized")
+    public static final String CODEC_PROPERTY = "findnumber.codec";
+
+    // Codec ids are dense, starting at 0
+    public static final int CODEC_COUNT = 2;
+
+    private WireFormat() {
+    }
+
+    public static MessageCodec codecForId(int id) {
+        switch (id) {
+            case BinaryMessageCodec.ID:
+                return BinaryMessageCodec.INSTANCE;
+            case SerializedMessageCodec.ID:
+                return SerializedMessageCodec.INSTANCE;
+            default:
+                return null;
+        }
+    }
+
+    public static MessageCodec preferredCodec() {
+        String name = System.getProperty(CODEC_PROPERTY, BinaryMessageCodec.INSTANCE.getName());
+        if (SerializedMessageCodec.INSTANCE.getName().equalsIgnoreCase(name)) {
+            return SerializedMessageCodec.INSTANCE;
+        }
+        return BinaryMessageCodec.INSTANCE;
+    }
+
+    public static void writeHandshake(DataOutput out, int codecId) throws IOException {
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(codecId);
+    }
+
+    /**
+     * Reads the peer's handshake and returns the codec id it carries
+     */
+    public static int readHandshake(DataInput in) throws IOException {
+        int m0 = in.readUnsignedByte();
+        int m1 = in.readUnsignedByte();
+        int version = in.readUnsignedByte();
+        int codecId = in.readUnsignedByte();
+        return checkHandshake(m0, m1, version, codecId);
+    }
+
+    public static int checkHandshake(int m0, int m1, int version, int codecId) throws IOException {
+        if (m0 != MAGIC_0 || m1 != MAGIC_1) {
+            throw new StreamCorruptedException("Invalid handshake from peer");
+        }
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported protocol version: " + version);
+        }
+        return codecId;
+    }
+
+    public static void checkFrameLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+    }
+
+    // Unsigned LEB128 encoding, 1 byte for values below 128
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    // Zig-zag encoding keeps small negative numbers short
+    public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    public static int readSignedVarInt(DataInput in) throws IOException {
+        int raw = readVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
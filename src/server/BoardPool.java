@@ -0,0 +1,82 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles the per-game board arrays between games.
+ *
+ * Every game on a server has the same grid size and seat count, so a
+ * finished game hands its {@link TargetPool} and {@link BoardState} back
+ * here, reset, and the next game takes them instead of allocating. At most
+ * MAX_IDLE of each are kept; anything beyond that is left to the GC, so a
+ * burst of games doesn't pin memory afterwards. Thread-safe.
+ */
+class BoardPool {
+    private static final int MAX_IDLE = 64;
+
+    private final int gridSize;
+    private final int maxPlayers;
+    private final Queue<TargetPool> idleTargets = new ConcurrentLinkedQueue<>();
+    private final Queue<BoardState> idleBoards = new ConcurrentLinkedQueue<>();
+    // Sizes tracked separately, ConcurrentLinkedQueue.size() is a full traversal
+    private final AtomicInteger idleTargetCount = new AtomicInteger();
+    private final AtomicInteger idleBoardCount = new AtomicInteger();
+
+    BoardPool(int gridSize, int maxPlayers) {
+        this.gridSize = gridSize;
+        this.maxPlayers = maxPlayers;
+    }
+
+    int getGridSize() {
+        return gridSize;
+    }
+
+    int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * A full pool of 1..gridSize
+     */
+    TargetPool takeTargets() {
+        TargetPool targets = idleTargets.poll();
+        if (targets == null) {
+            return new TargetPool(gridSize);
+        }
+        idleTargetCount.decrementAndGet();
+        return targets;
+    }
+
+    /**
+     * An empty board with every slot free
+     */
+    BoardState takeBoard() {
+        BoardState board = idleBoards.poll();
+        if (board == null) {
+            return new BoardState(gridSize, maxPlayers);
+        }
+        idleBoardCount.decrementAndGet();
+        return board;
+    }
+
+    /**
+     * Resets both and keeps them for the next game. The caller must not
+     * touch them afterwards.
+     */
+    void release(TargetPool targets, BoardState board) {
+        if (idleTargetCount.incrementAndGet() <= MAX_IDLE) {
+            targets.reset();
+            idleTargets.offer(targets);
+        } else {
+            idleTargetCount.decrementAndGet();
+        }
+        if (idleBoardCount.incrementAndGet() <= MAX_IDLE) {
+            board.reset();
+            idleBoards.offer(board);
+        } else {
+            idleBoardCount.decrementAndGet();
+        }
+    }
+}
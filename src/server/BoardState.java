@@ -0,0 +1,135 @@
+package server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Who found which number, kept in primitive arrays.
+ *
+ * Each player in a game holds a small slot index. The board stores one byte
+ * per number (the finder's slot + 1, or 0 while unfound) and a score
+ * counter per slot is bumped as clicks land, so final scores and the winner
+ * come from the counters in O(players) instead of a pass over the board.
+ * Not thread-safe; guarded by the owning game.
+ */
+class BoardState {
+    private static final int NO_PLAYER = -1;
+
+    private final byte[] owners; // indexed by number, 1..gridSize
+    private final int[] slotPlayerIds;
+    private final int[] slotScores;
+    private int foundCount;
+
+    BoardState(int gridSize, int maxPlayers) {
+        if (maxPlayers > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many players for a board: " + maxPlayers);
+        }
+        owners = new byte[gridSize + 1];
+        slotPlayerIds = new int[maxPlayers];
+        slotScores = new int[maxPlayers];
+        Arrays.fill(slotPlayerIds, NO_PLAYER);
+    }
+
+    /**
+     * Gives the player a slot. Returns false if every slot is taken.
+     */
+    boolean assignSlot(int playerId) {
+        if (slotOf(playerId) >= 0) {
+            return true;
+        }
+        for (int slot = 0; slot < slotPlayerIds.length; slot++) {
+            if (slotPlayerIds[slot] == NO_PLAYER) {
+                slotPlayerIds[slot] = playerId;
+                slotScores[slot] = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Frees the player's slot. Only call before the game starts, once
+     * numbers are owned the slot must stay for scoring.
+     */
+    void releaseSlot(int playerId) {
+        int slot = slotOf(playerId);
+        if (slot >= 0) {
+            slotPlayerIds[slot] = NO_PLAYER;
+            slotScores[slot] = 0;
+        }
+    }
+
+    /**
+     * Records the number as found by the player. Returns false if it was
+     * already found or the player has no slot.
+     */
+    boolean claim(int number, int playerId) {
+        int slot = slotOf(playerId);
+        if (slot < 0 || owners[number] != 0) {
+            return false;
+        }
+        owners[number] = (byte) (slot + 1);
+        slotScores[slot]++;
+        foundCount++;
+        return true;
+    }
+
+    int getFoundCount() {
+        return foundCount;
+    }
+
+    int getScore(int playerId) {
+        int slot = slotOf(playerId);
+        return slot < 0 ? 0 : slotScores[slot];
+    }
+
+    /**
+     * Returns the player with the most numbers found, or -1 if nobody found
+     * any. Ties go to the player who joined first.
+     */
+    int getWinnerId() {
+        int winnerId = NO_PLAYER;
+        int highestScore = 0;
+        for (int slot = 0; slot < slotPlayerIds.length; slot++) {
+            if (slotPlayerIds[slot] != NO_PLAYER && slotScores[slot] > highestScore) {
+                highestScore = slotScores[slot];
+                winnerId = slotPlayerIds[slot];
+            }
+        }
+        return winnerId;
+    }
+
+    /**
+     * Player ID -> numbers found, for players who found at least one
+     * (the GAME_OVER scores)
+     */
+    Map<Integer, Integer> getScores() {
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (int slot = 0; slot < slotPlayerIds.length; slot++) {
+            if (slotPlayerIds[slot] != NO_PLAYER && slotScores[slot] > 0) {
+                scores.put(slotPlayerIds[slot], slotScores[slot]);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Clears the board and all slots
+     */
+    void reset() {
+        Arrays.fill(owners, (byte) 0);
+        Arrays.fill(slotPlayerIds, NO_PLAYER);
+        Arrays.fill(slotScores, 0);
+        foundCount = 0;
+    }
+
+    private int slotOf(int playerId) {
+        for (int slot = 0; slot < slotPlayerIds.length; slot++) {
+            if (slotPlayerIds[slot] == playerId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,88 +1,190 @@
 package server;
 
 import common.ConnectionHandler;
+import common.EncodedMessage;
+import common.LeaderboardEntry;
 import common.Message;
+import common.MessageConnection;
+import common.MessageDispatcher;
+import common.MessageKind;
+import common.NumberFound;
+import common.ReusableMessages;
 import common.User;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Handles individual client connections
+ * Handles individual client connections.
+ *
+ * In blocking mode the handler runs its own read loop on a pool thread. In
+ * NIO mode the owning {@link NioConnection} feeds decoded messages to
+ * {@link #onMessage(Message)} from its event loop instead. Messages that
+ * wait on the database (LOGIN, REGISTER) are handed to the client thread
+ * pool there, so one slow query doesn't stall every connection on the loop.
  */
 public class ClientHandler implements Runnable {
-    private final Socket clientSocket;
+    private static final MessageDispatcher<ClientHandler> DISPATCHER = new MessageDispatcher<ClientHandler>()
+            .on(MessageKind.LOGIN, ClientHandler::handleLogin)
+            .on(MessageKind.REGISTER, ClientHandler::handleRegister)
+            .on(MessageKind.FIND_GAME, (handler, message) -> handler.handleFindGame())
+            .on(MessageKind.START_GAME, (handler, message) -> handler.handleStartConfirmation())
+            .on(MessageKind.NUMBER_FOUND, ClientHandler::handleNumberFound)
+            .on(MessageKind.USE_POWERUP, ClientHandler::handlePowerup)
+            .on(MessageKind.DECLINE_GAME, (handler, message) -> handler.handleDecline());
+
+    private final Socket clientSocket; // null in NIO mode
     private final GameServer server;
-    private ConnectionHandler connection;
-    private User user;
-    private Game currentGame;
+    private volatile MessageConnection connection;
+    private volatile User user; // set on a pool thread in NIO mode, see onMessage
+    private volatile Game currentGame; // set by the game once a join goes through
+    private volatile Game pendingGame; // seat reserved, join not gone through yet
     private boolean isRunning = true;
+    private final AtomicBoolean disconnected = new AtomicBoolean(false);
+
+    // NIO mode: non-null while a pool thread works through this client's
+    // messages; later ones queue behind it to keep their order
+    private final Object offloadLock = new Object();
+    private ArrayDeque<Message> offloaded; // guarded by offloadLock
 
     public ClientHandler(Socket socket, GameServer server) {
         this.clientSocket = socket;
         this.server = server;
     }
 
+    public ClientHandler(GameServer server) {
+        this(null, server);
+    }
+
     @Override
     public void run() {
         try {
-            connection = new ConnectionHandler(clientSocket);
-            System.out.println("New client connected: " + clientSocket.getInetAddress().getHostAddress());
+            ConnectionHandler blockingConnection = ConnectionHandler.accept(clientSocket);
+            // Sends go through a queue so a slow client never blocks the game
+            connectionOpened(new QueuedConnection(blockingConnection, server.getClientThreadPool()));
 
             // Process messages from the client
             while (isRunning) {
-                Message message = connection.receiveMessage();
+                Message message = blockingConnection.receiveMessage();
                 processMessage(message);
             }
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Client disconnected: " + e.getMessage());
         } finally {
-            // Clean up resources
-            if (user != null && currentGame != null) {
-                currentGame.removePlayer(user.getId());
-            }
             if (connection != null) {
                 connection.close();
             }
-            server.removeClient(this);
-        }
-    }
-
-    private void processMessage(Message message) throws IOException {
-        String messageType = message.getType();
-
-        switch (messageType) {
-            case Message.LOGIN:
-                handleLogin(message);
-                break;
-            case Message.REGISTER:
-                handleRegister(message);
-                break;
-            case Message.FIND_GAME:
-                handleFindGame();
-                break;
-            case Message.START_GAME:
-                // When a player confirms ready to start, notify the game
-                if (currentGame != null) {
-                    currentGame.handleStartConfirmation(user.getId());
-                }
-                break;
-            case Message.NUMBER_FOUND:
-                handleNumberFound(message);
-                break;
-            case Message.USE_POWERUP:
-                handlePowerup(message);
-                break;
-            case Message.DECLINE_GAME:
-                if (currentGame != null) {
-                    currentGame.handleDecline(user.getId());
+            connectionClosed();
+        }
+    }
+
+    /**
+     * Attaches a connection before its handshake completes (NIO mode)
+     */
+    void attach(MessageConnection connection) {
+        this.connection = connection;
+    }
+
+    void connectionOpened(MessageConnection connection) {
+        this.connection = connection;
+        System.out.println("New client connected: " + connection.getRemoteAddress()
+                + " (" + connection.getCodec().getName() + " codec)");
+    }
+
+    /**
+     * Called by the NIO transport for each decoded message
+     */
+    void onMessage(Message message) {
+        synchronized (offloadLock) {
+            if (offloaded != null) {
+                // Held past the next read, so it can't stay in the connection's reused instance
+                offloaded.add(ReusableMessages.detach(message));
+                return;
+            }
+            if (waitsOnDatabase(message)) {
+                offloaded = new ArrayDeque<>();
+                offloaded.add(message);
+                server.getClientThreadPool().execute(this::processOffloaded);
+                return;
+            }
+        }
+        processSafely(message);
+    }
+
+    private static boolean waitsOnDatabase(Message message) {
+        MessageKind kind = message.getKind();
+        return kind == MessageKind.LOGIN || kind == MessageKind.REGISTER;
+    }
+
+    /**
+     * Runs on the client thread pool until the offloaded messages are drained
+     */
+    private void processOffloaded() {
+        while (true) {
+            Message message;
+            synchronized (offloadLock) {
+                message = offloaded.poll();
+                if (message == null) {
+                    offloaded = null;
+                    return;
                 }
-                break;
-            default:
-                System.err.println("Unknown message type: " + messageType);
-                break;
+            }
+            processSafely(message);
+        }
+    }
+
+    private void processSafely(Message message) {
+        try {
+            processMessage(message);
+        } catch (IOException e) {
+            System.out.println("Client disconnected: " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    /**
+     * Cleans up game and server state once the connection is gone. Safe to call more than once.
+     */
+    void connectionClosed() {
+        if (!disconnected.compareAndSet(false, true)) {
+            return;
+        }
+        if (user != null) {
+            // A join still queued in the pending game sees we're gone and
+            // gives the seat back; this covers one that is running right now
+            Game pending = pendingGame;
+            if (pending != null) {
+                pending.removePlayer(user.getId());
+            }
+            Game current = currentGame;
+            if (current != null && current != pending) {
+                current.removePlayer(user.getId());
+            }
+        }
+        server.leaveMatchmaking(this);
+        server.removeClient(this);
+    }
+
+    void processMessage(Message message) throws IOException {
+        if (!DISPATCHER.dispatch(this, message)) {
+            System.err.println("Unknown message type: " + message.getType());
+        }
+    }
+
+    private void handleStartConfirmation() {
+        // When a player confirms ready to start, notify the game
+        if (currentGame != null) {
+            currentGame.handleStartConfirmation(user.getId());
+        }
+    }
+
+    private void handleDecline() {
+        if (currentGame != null) {
+            currentGame.handleDecline(user.getId());
         }
     }
 
@@ -94,17 +196,20 @@ public class ClientHandler implements Runnable {
 
         Message response = new Message(Message.LOGIN_RESPONSE);
         if (authenticatedUser != null) {
-            // Prevent concurrent logins for the same user
-            if (server.isUserLoggedIn(username)) {
+            // Prevent concurrent logins for the same user. Set first, so a
+            // disconnect while claiming releases the claim.
+            User previous = this.user;
+            this.user = authenticatedUser;
+            if (!server.claimSession(this, authenticatedUser, previous)) {
+                this.user = previous;
                 response.put("success", false);
                 response.put("error", "User already logged in from another client.");
             } else {
-                this.user = authenticatedUser;
                 response.put("success", true);
                 response.put("user", authenticatedUser);
 
                 // Send leaderboard data
-                List<User> leaderboard = server.getDatabaseManager().getLeaderboard();
+                List<LeaderboardEntry> leaderboard = server.getDatabaseManager().getLeaderboard();
                 response.put("leaderboard", leaderboard);
 
                 // Remove automatic game joining - players will join only when clicking "Find
@@ -150,8 +255,17 @@ public class ClientHandler implements Runnable {
         boolean registered = server.getDatabaseManager().registerUser(newUser);
 
         Message response = new Message(Message.LOGIN_RESPONSE);
+        User previous = this.user;
         if (registered) {
+            // Set before claiming, as in handleLogin
             this.user = newUser;
+        }
+        if (registered && !server.claimSession(this, newUser, previous)) {
+            // Someone logged in as the new account before we could
+            this.user = previous;
+            response.put("success", false);
+            response.put("error", "User already logged in from another client.");
+        } else if (registered) {
             response.put("success", true);
             response.put("user", newUser);
 
@@ -172,24 +286,25 @@ public class ClientHandler implements Runnable {
             return;
         }
 
+        if (pendingGame != null) {
+            // Still joining the last one, PLAYER_JOINED or an ERROR is on its way
+            System.err.println("FIND_GAME from " + user.getUsername() + " while a join is pending");
+            return;
+        }
+
         System.out.println("User " + user.getUsername() + " is finding a game...");
 
         // If the user is already in a game, leave it first
         if (currentGame != null) {
             currentGame.removePlayer(user.getId());
+            currentGame = null;
         }
 
         // Find or create a game
-        Game game = server.findOrCreateGame();
-        boolean joined = game.addPlayer(this);
+        boolean joined = server.joinGame(this);
 
         if (joined) {
-            currentGame = game;
-            System.out.println("User " + user.getUsername() + " joined game " + game.getGameId() +
-                    " (Current players: " + game.getPlayerCount() + "/" + game.getMaxPlayers() + ")");
-
-            // Server will automatically start the game when enough players join (in
-            // Game.addPlayer)
+            // The game finishes the join on its own thread and sets currentGame.
             // The client will wait for PLAYER_JOINED or START_GAME messages
         } else {
             System.err.println("Could not add user " + user.getUsername() + " to game");
@@ -206,15 +321,9 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        int number = message.getInt("number");
-        boolean success = currentGame.processNumberFound(user.getId(), number);
-
-        if (!success) {
-            // Send feedback only when it's incorrect
-            Message response = new Message("INCORRECT_NUMBER");
-            response.put("number", number);
-            sendMessage(response);
-        }
+        // The game answers a wrong click with INCORRECT_NUMBER itself
+        NumberFound click = (NumberFound) message.getPayload();
+        currentGame.processNumberFound(user.getId(), click.getNumber(), click.getClientTime());
     }
 
     private void handlePowerup(Message message) {
@@ -227,11 +336,19 @@ public class ClientHandler implements Runnable {
     }
 
     public void sendMessage(Message message) throws IOException {
+        MessageConnection connection = this.connection;
         if (connection != null && connection.isConnected()) {
             connection.sendMessage(message);
         }
     }
 
+    public void sendEncoded(EncodedMessage message) throws IOException {
+        MessageConnection connection = this.connection;
+        if (connection != null && connection.isConnected()) {
+            connection.sendEncoded(message);
+        }
+    }
+
     public User getUser() {
         return user;
     }
@@ -244,6 +361,17 @@ public class ClientHandler implements Runnable {
         this.currentGame = game;
     }
 
+    /**
+     * The game holding a seat for this client whose join hasn't gone through yet, set by {@link Game#addPlayer}
+     */
+    void setPendingGame(Game game) {
+        this.pendingGame = game;
+    }
+
+    boolean isDisconnected() {
+        return disconnected.get();
+    }
+
     public void stop() {
         isRunning = false;
         if (connection != null) {
@@ -0,0 +1,174 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A few JDBC connections, each used by one platform thread at a time.
+ *
+ * Tasks are queued to the pool's own threads, one per connection, and the
+ * caller waits for the result. Like the single database thread before it,
+ * this keeps the SQLite driver's native blocking off virtual client
+ * threads. Every connection caches its prepared statements, so each SQL
+ * string is parsed once per connection. The time tasks spend queued for a
+ * connection goes into a histogram for the metrics log.
+ */
+class ConnectionPool {
+    /**
+     * Opens one connection of the pool
+     */
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Database work that runs with a connection from the pool
+     */
+    interface Task<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    private final String name;
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+    ConnectionPool(String name, int size, Opener opener) {
+        this.name = name;
+        for (int i = 0; i < size; i++) {
+            try {
+                PooledConnection connection = new PooledConnection(opener.open());
+                connections.add(connection);
+                idle.add(connection);
+            } catch (SQLException e) {
+                System.err.println("Database connection error (" + name + "): " + e.getMessage());
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, connections.size()), r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the task on a pool thread with a connection and waits for its
+     * result. Returns the fallback if the task fails or the pool is closed.
+     */
+    <T> T call(Task<T> task, T fallback) {
+        if (connections.isEmpty()) {
+            System.err.println("Database is not connected (" + name + ")");
+            return fallback;
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            return workers.submit(() -> {
+                // One thread per connection, so this never actually blocks
+                PooledConnection connection = idle.take();
+                waitTimes.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.run(connection);
+                } finally {
+                    idle.add(connection);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException e) {
+            System.err.println("Database task failed: " + e.getCause());
+            return fallback;
+        } catch (RejectedExecutionException e) {
+            System.err.println("Database is closed");
+            return fallback;
+        }
+    }
+
+    /**
+     * How long tasks waited for a connection since the last call
+     */
+    LatencyHistogram.Snapshot takeWaitTimes() {
+        return waitTimes.snapshotAndReset();
+    }
+
+    /**
+     * Lets queued tasks finish, then closes every connection
+     */
+    void close() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (PooledConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * A connection and the statements prepared on it. Statements handed out
+     * here stay open for reuse; callers close their result sets only.
+     */
+    static final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * Like {@link #prepare(String)}, for inserts that read back generated keys
+         */
+        PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        private void close() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing database connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,19 +1,43 @@
 package server;
 
+import common.LeaderboardEntry;
 import common.User;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Date;
 
 /**
- * Manages database operations for the game
+ * Manages database operations for the game.
+ *
+ * JDBC work runs on platform threads owned by two connection pools. The
+ * SQLite driver blocks inside native code and monitors, which would pin a
+ * virtual client thread's carrier; offloading lets the caller park instead.
+ * The database is in WAL mode, so reads (logins, the leaderboard) go to a
+ * few reader connections and run alongside each other and alongside the
+ * one writer. SQLite allows only one writer at a time, so every write goes
+ * to a single writer connection instead of contending for the file lock.
+ *
+ * Finished games don't wait for the writer at all: they are journaled and
+ * applied in the background by a {@link ResultWriter}. The leaderboard is
+ * read once and then kept up to date in memory, see {@link Leaderboard}.
  */
 public class DatabaseManager {
     // Change the path to use absolute path for more reliability
     private static final String DB_URL;
-    private Connection connection;
+    private static final Path JOURNAL_PATH;
+    private static final int READER_CONNECTIONS = 4;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    private final ConnectionPool writer;
+    private final ConnectionPool readers;
+    private final ResultWriter results;
+    private final Leaderboard leaderboard;
 
     static {
         // Create database directory if it doesn't exist
@@ -24,6 +48,7 @@ public class DatabaseManager {
 
         // Set database URL with absolute path
         DB_URL = "jdbc:sqlite:" + dbDir.getAbsolutePath() + File.separator + "findnumbergame.db";
+        JOURNAL_PATH = new File(dbDir, "outcomes.journal").toPath();
 
         try {
             // Load SQLite JDBC driver explicitly
@@ -36,24 +61,55 @@ public class DatabaseManager {
     }
 
     public DatabaseManager() {
+        System.out.println("Connecting to database at: " + DB_URL);
         try {
-            System.out.println("Connecting to database at: " + DB_URL);
-
             // Create a new instance of the SQLite JDBC driver manually
             Driver driver = new org.sqlite.JDBC();
             DriverManager.registerDriver(driver);
-
-            // Create database if it doesn't exist
-            connection = DriverManager.getConnection(DB_URL);
-            System.out.println("Database connection established successfully.");
-            initTables();
         } catch (SQLException e) {
             System.err.println("Database connection error: " + e.getMessage());
-            e.printStackTrace();
         }
+
+        // The writer comes first: it creates the file, switches it to WAL and creates the tables
+        writer = new ConnectionPool("db-writer", 1, () -> openConnection(false));
+        writer.call(connection -> {
+            initTables(connection.getConnection());
+            return null;
+        }, null);
+        readers = new ConnectionPool("db-reader", READER_CONNECTIONS, () -> openConnection(true));
+        System.out.println("Database connection established successfully.");
+
+        // Committed results refresh the leaderboard, so it has to exist before any replay
+        leaderboard = new Leaderboard(this::queryLeaderboard);
+
+        // Replays anything left over from the last run before new results arrive
+        results = new ResultWriter(JOURNAL_PATH, this::applyOutcomes);
+        results.start();
+
+        leaderboard.load();
+    }
+
+    private static Connection openConnection(boolean readOnly) throws SQLException {
+        // Create database if it doesn't exist
+        Connection connection = DriverManager.getConnection(DB_URL);
+        try (Statement stmt = connection.createStatement()) {
+            // Wait for a lock instead of failing straight away with SQLITE_BUSY
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = true");
+            } else {
+                // Persistent in the file, readers then never block the writer or each other
+                stmt.execute("PRAGMA journal_mode = WAL");
+                stmt.execute("PRAGMA synchronous = NORMAL");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
     }
 
-    private void initTables() {
+    private void initTables(Connection connection) {
         try (Statement stmt = connection.createStatement()) {
             // Create Users table with new fields
             stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
@@ -85,6 +141,15 @@ public class DatabaseManager {
                     "FOREIGN KEY (game_id) REFERENCES game_history(id)," +
                     "FOREIGN KEY (user_id) REFERENCES users(id))");
 
+            // The leaderboard's order, so loading the top is a scan of its first rows rather than a sort
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_users_leaderboard " +
+                    "ON users (total_score DESC, games_won DESC, id)");
+
+            // Outcomes already applied, so a replayed journal entry isn't counted twice
+            stmt.execute("CREATE TABLE IF NOT EXISTS applied_outcomes (" +
+                    "id TEXT PRIMARY KEY," +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
             System.out.println("Database tables initialized");
         } catch (SQLException e) {
             System.err.println("Error initializing database tables: " + e.getMessage());
@@ -92,167 +157,296 @@ public class DatabaseManager {
     }
 
     public boolean registerUser(User user) {
-        try (PreparedStatement pstmt = connection.prepareStatement(
-                "INSERT INTO users (username, password, email, sex, date_of_birth) VALUES (?, ?, ?, ?, ?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword());
-            pstmt.setString(3, user.getEmail());
-            pstmt.setString(4, user.getSex());
-
-            // Handle date of birth (could be null)
-            if (user.getDateOfBirth() != null) {
-                pstmt.setDate(5, new java.sql.Date(user.getDateOfBirth().getTime()));
-            } else {
-                pstmt.setNull(5, Types.DATE);
-            }
+        boolean registered = writer.call(connection -> {
+            try {
+                PreparedStatement pstmt = connection.prepareReturningKeys(
+                        "INSERT INTO users (username, password, email, sex, date_of_birth) VALUES (?, ?, ?, ?, ?)");
+
+                pstmt.setString(1, user.getUsername());
+                pstmt.setString(2, user.getPassword());
+                pstmt.setString(3, user.getEmail());
+                pstmt.setString(4, user.getSex());
+
+                // Handle date of birth (could be null)
+                if (user.getDateOfBirth() != null) {
+                    pstmt.setDate(5, new java.sql.Date(user.getDateOfBirth().getTime()));
+                } else {
+                    pstmt.setNull(5, Types.DATE);
+                }
 
-            int affected = pstmt.executeUpdate();
-            if (affected > 0) {
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        user.setId(rs.getInt(1));
-                        return true;
+                int affected = pstmt.executeUpdate();
+                if (affected > 0) {
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            user.setId(rs.getInt(1));
+                            return true;
+                        }
                     }
                 }
+            } catch (SQLException e) {
+                System.err.println("Error registering user: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error registering user: " + e.getMessage());
+            return false;
+        }, false);
+        if (registered) {
+            // Only shows up with fewer than Leaderboard.SIZE players, but it's cheap
+            leaderboard.update(Collections.singletonList(user));
         }
-        return false;
+        return registered;
     }
 
     public User authenticateUser(String username, String password) {
-        try (PreparedStatement pstmt = connection.prepareStatement(
-                "SELECT * FROM users WHERE username = ? AND password = ?")) {
-
-            pstmt.setString(1, username);
-            pstmt.setString(2, password);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    User user = new User(username, password);
-                    user.setId(rs.getInt("id"));
-                    user.setGamesWon(rs.getInt("games_won"));
-                    user.setGamesLost(rs.getInt("games_lost"));
-                    user.setTotalScore(rs.getInt("total_score"));
-
-                    // Get the new fields
-                    user.setEmail(rs.getString("email"));
-                    user.setSex(rs.getString("sex"));
-
-                    // Handle date of birth
-                    java.sql.Date dobSql = rs.getDate("date_of_birth");
-                    if (dobSql != null) {
-                        user.setDateOfBirth(new Date(dobSql.getTime()));
-                    }
+        return readers.call(connection -> {
+            try {
+                PreparedStatement pstmt = connection.prepare(
+                        "SELECT * FROM users WHERE username = ? AND password = ?");
+
+                pstmt.setString(1, username);
+                pstmt.setString(2, password);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        User user = new User(username, password);
+                        user.setId(rs.getInt("id"));
+                        user.setGamesWon(rs.getInt("games_won"));
+                        user.setGamesLost(rs.getInt("games_lost"));
+                        user.setTotalScore(rs.getInt("total_score"));
+
+                        // Get the new fields
+                        user.setEmail(rs.getString("email"));
+                        user.setSex(rs.getString("sex"));
+
+                        // Handle date of birth
+                        java.sql.Date dobSql = rs.getDate("date_of_birth");
+                        if (dobSql != null) {
+                            user.setDateOfBirth(new Date(dobSql.getTime()));
+                        }
 
-                    return user;
+                        return user;
+                    }
                 }
+            } catch (SQLException e) {
+                System.err.println("Error authenticating user: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error authenticating user: " + e.getMessage());
-        }
-        return null;
+            return null;
+        }, null);
     }
 
-    public List<User> getLeaderboard() {
-        List<User> leaderboard = new ArrayList<>();
-        try (Statement stmt = connection.createStatement();
-                ResultSet rs = stmt.executeQuery(
-                        "SELECT * FROM users ORDER BY total_score DESC, games_won DESC LIMIT 20")) {
-
-            while (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setGamesWon(rs.getInt("games_won"));
-                user.setGamesLost(rs.getInt("games_lost"));
-                user.setTotalScore(rs.getInt("total_score"));
-                leaderboard.add(user);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error retrieving leaderboard: " + e.getMessage());
-        }
-        return leaderboard;
+    /**
+     * The top players, from memory. Shared and read-only.
+     */
+    public List<LeaderboardEntry> getLeaderboard() {
+        return leaderboard.top();
     }
 
-    public void updateUserStats(User user) {
-        try (PreparedStatement pstmt = connection.prepareStatement(
-                "UPDATE users SET games_won = ?, games_lost = ?, total_score = ? WHERE id = ?")) {
+    /**
+     * Brings the leaderboard up to date with the users' in-memory stats.
+     * Called as a game ends, before its result reaches the database; the
+     * committed stats replace these once it does.
+     */
+    public void updateLeaderboard(Collection<User> users) {
+        leaderboard.update(users);
+    }
 
-            pstmt.setInt(1, user.getGamesWon());
-            pstmt.setInt(2, user.getGamesLost());
-            pstmt.setInt(3, user.getTotalScore());
-            pstmt.setInt(4, user.getId());
+    private List<LeaderboardEntry> queryLeaderboard() {
+        return readers.call(connection -> {
+            List<LeaderboardEntry> leaderboard = new ArrayList<>();
+            try (ResultSet rs = connection.prepare(
+                    "SELECT id, username, games_won, games_lost, total_score FROM users " +
+                            "ORDER BY total_score DESC, games_won DESC, id " +
+                            "LIMIT " + Leaderboard.SIZE).executeQuery()) {
 
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error updating user stats: " + e.getMessage());
-        }
+                while (rs.next()) {
+                    leaderboard.add(readLeaderboardRow(rs, leaderboard.size() + 1));
+                }
+            } catch (SQLException e) {
+                System.err.println("Error retrieving leaderboard: " + e.getMessage());
+            }
+            return leaderboard;
+        }, new ArrayList<>());
     }
 
-    public void recordGameResult(int winnerId, List<Integer> playerIds, int durationSeconds) {
-        try {
-            connection.setAutoCommit(false);
-
-            try (PreparedStatement pstmt = connection.prepareStatement(
-                    "INSERT INTO game_history (player_count, winner_id, duration_seconds) VALUES (?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
+    /**
+     * Queues a finished game for the database. Returns once it is journaled;
+     * games ending around the same time are committed together.
+     */
+    void submitOutcome(GameOutcome outcome) {
+        results.submit(outcome);
+    }
 
-                pstmt.setInt(1, playerIds.size());
-                pstmt.setInt(2, winnerId);
-                pstmt.setInt(3, durationSeconds);
+    /**
+     * Finished games journaled but not yet in the database
+     */
+    public int getPendingOutcomeCount() {
+        return results.getPendingCount();
+    }
 
-                pstmt.executeUpdate();
+    /**
+     * Writes a batch of finished games and their stat changes in one
+     * transaction, skipping any applied before, then hands the players'
+     * committed stats to the leaderboard. Returns false if the batch should
+     * be retried.
+     */
+    private boolean applyOutcomes(List<GameOutcome> outcomes) {
+        List<LeaderboardEntry> committed = writer.call(pooled -> {
+            // Only the writer thread uses this connection, so the transaction can't interleave
+            Connection connection = pooled.getConnection();
+            try {
+                connection.setAutoCommit(false);
+
+                // The statements are cached on the connection, so a failed attempt can leave rows
+                // queued in their batches; they must not be sent along with the retry
+                PreparedStatement claim = pooled.prepare("INSERT OR IGNORE INTO applied_outcomes (id) VALUES (?)");
+                claim.clearBatch();
+                for (GameOutcome outcome : outcomes) {
+                    claim.setString(1, outcome.getId());
+                    claim.addBatch();
+                }
+                int[] claimed = claim.executeBatch();
 
+                // The writer is the only one inserting, so ids can be handed out
+                // here and the batch needs no generated keys
                 int gameId;
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        gameId = rs.getInt(1);
+                try (ResultSet rs = pooled.prepare("SELECT COALESCE(MAX(id), 0) FROM game_history").executeQuery()) {
+                    gameId = rs.next() ? rs.getInt(1) : 0;
+                }
 
-                        // Record participants
-                        try (PreparedStatement pstmt2 = connection.prepareStatement(
-                                "INSERT INTO game_participants (game_id, user_id, score) VALUES (?, ?, ?)")) {
+                PreparedStatement history = pooled.prepare(
+                        "INSERT INTO game_history (id, player_count, winner_id, duration_seconds) VALUES (?, ?, ?, ?)");
+                PreparedStatement participants = pooled.prepare(
+                        "INSERT INTO game_participants (game_id, user_id, score) VALUES (?, ?, ?)");
+                // Relative updates, so results never overwrite each other
+                PreparedStatement stats = pooled.prepare(
+                        "UPDATE users SET games_won = games_won + ?, games_lost = games_lost + ?, " +
+                                "total_score = total_score + ? WHERE id = ?");
+                history.clearBatch();
+                participants.clearBatch();
+                stats.clearBatch();
+
+                int applied = 0;
+                for (int i = 0; i < outcomes.size(); i++) {
+                    if (claimed[i] == 0) {
+                        // Applied before a crash and replayed from the journal
+                        continue;
+                    }
+                    GameOutcome outcome = outcomes.get(i);
+                    gameId++;
+                    applied++;
+
+                    history.setInt(1, gameId);
+                    history.setInt(2, outcome.getPlayers().size());
+                    history.setInt(3, outcome.getWinnerId());
+                    history.setInt(4, outcome.getDurationSeconds());
+                    history.addBatch();
+
+                    for (GameOutcome.PlayerResult player : outcome.getPlayers()) {
+                        participants.setInt(1, gameId);
+                        participants.setInt(2, player.userId);
+                        participants.setInt(3, 0); // Default score, can be updated later
+                        participants.addBatch();
+
+                        stats.setInt(1, player.won ? 1 : 0);
+                        stats.setInt(2, player.won ? 0 : 1);
+                        stats.setInt(3, player.scoreGained);
+                        stats.setInt(4, player.userId);
+                        stats.addBatch();
+                    }
+                }
 
-                            for (int playerId : playerIds) {
-                                pstmt2.setInt(1, gameId);
-                                pstmt2.setInt(2, playerId);
-                                pstmt2.setInt(3, 0); // Default score, can be updated later
-                                pstmt2.addBatch();
+                List<LeaderboardEntry> rows = new ArrayList<>();
+                if (applied > 0) {
+                    history.executeBatch();
+                    participants.executeBatch();
+                    stats.executeBatch();
+
+                    // Read back inside the transaction: exactly what is being committed
+                    Set<Integer> players = new LinkedHashSet<>();
+                    for (int i = 0; i < outcomes.size(); i++) {
+                        if (claimed[i] != 0) {
+                            for (GameOutcome.PlayerResult player : outcomes.get(i).getPlayers()) {
+                                players.add(player.userId);
+                            }
+                        }
+                    }
+                    // Games everyone left (e.g. journaled by an older version) have no players to read
+                    if (!players.isEmpty()) {
+                        // One query for the whole batch; the ids are ints, so they can go in the SQL
+                        StringBuilder sql = new StringBuilder(
+                                "SELECT id, username, games_won, games_lost, total_score FROM users WHERE id IN (");
+                        for (int userId : players) {
+                            sql.append(userId).append(',');
+                        }
+                        sql.setCharAt(sql.length() - 1, ')');
+                        try (Statement select = connection.createStatement();
+                                ResultSet rs = select.executeQuery(sql.toString())) {
+                            while (rs.next()) {
+                                rows.add(readLeaderboardRow(rs, 0));
                             }
-
-                            pstmt2.executeBatch();
                         }
                     }
                 }
 
                 connection.commit();
-            }
-        } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Error rolling back transaction: " + ex.getMessage());
-            }
-            System.err.println("Error recording game result: " + e.getMessage());
-        } finally {
-            try {
-                connection.setAutoCommit(true);
+                return rows;
             } catch (SQLException e) {
-                System.err.println("Error resetting auto-commit: " + e.getMessage());
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Error rolling back transaction: " + ex.getMessage());
+                }
+                System.err.println("Error recording game results: " + e.getMessage());
+                return null;
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting auto-commit: " + e.getMessage());
+                }
             }
+        }, null);
+        if (committed == null) {
+            return false;
+        }
+        if (!committed.isEmpty()) {
+            leaderboard.refresh(committed);
         }
+        return true;
+    }
+
+    private static LeaderboardEntry readLeaderboardRow(ResultSet rs, int rank) throws SQLException {
+        return new LeaderboardEntry(rank,
+                rs.getInt("id"),
+                rs.getString("username"),
+                rs.getInt("games_won"),
+                rs.getInt("games_lost"),
+                rs.getInt("total_score"));
+    }
+
+    /**
+     * Result commits since the last call, with their sizes and latency
+     */
+    ResultWriter.BatchStats takeResultBatchStats() {
+        return results.takeBatchStats();
+    }
+
+    /**
+     * How long reads waited for a connection since the last call
+     */
+    public LatencyHistogram.Snapshot takeReadWaitTimes() {
+        return readers.takeWaitTimes();
+    }
+
+    /**
+     * How long writes waited for the writer since the last call
+     */
+    public LatencyHistogram.Snapshot takeWriteWaitTimes() {
+        return writer.takeWaitTimes();
     }
 
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
-        } catch (SQLException e) {
-            System.err.println("Error closing database connection: " + e.getMessage());
-        }
+        // First, so it doesn't retry against closed connections
+        results.close();
+        readers.close();
+        writer.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Places players into the fullest waiting game, without a global lock or a
+ * scan.
+ *
+ * Open games sit in one queue per number of free seats. A join polls the
+ * fullest games first, so lobbies fill up and start, and reserves a seat
+ * with {@link Game#addPlayer}'s compare-and-set. Entries can go stale (the
+ * game filled up, started or was abandoned after it was queued); a failed
+ * reservation simply drops them. Games re-queue themselves when seats free up.
+ *
+ * Only creating a game is serialized: a join that finds nothing open takes
+ * createLock, looks again and tries the newest game before creating another,
+ * so a burst of simultaneous joins shares lobbies instead of each getting
+ * its own.
+ */
+class FillMatchmaker implements Matchmaker {
+    private final int maxPlayers;
+    private final Supplier<Game> gameFactory;
+    private final Queue<Game>[] openGames; // indexed by free seats, 1..maxPlayers
+    private final LatencyHistogram timeToMatch = new LatencyHistogram();
+    private final Object createLock = new Object();
+    private Game newest; // last game created, guarded by createLock
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    FillMatchmaker(int maxPlayers, Supplier<Game> gameFactory) {
+        this.maxPlayers = maxPlayers;
+        this.gameFactory = gameFactory;
+        this.openGames = new Queue[maxPlayers + 1];
+        for (int free = 1; free <= maxPlayers; free++) {
+            openGames[free] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Seats the client in an open game, creating one if none has room.
+     * Returns false only if even a new game turned the client away.
+     */
+    @Override
+    public boolean join(ClientHandler client) {
+        long findTime = System.nanoTime();
+        if (joinOpenGame(client, findTime)) {
+            return true;
+        }
+
+        synchronized (createLock) {
+            // Another join may have created and published a game while we waited.
+            // The newest game is tried directly: a concurrent join can hold its
+            // queue entry for a moment.
+            if (joinOpenGame(client, findTime)) {
+                return true;
+            }
+            if (newest != null && newest.addPlayer(client, findTime)) {
+                reopen(newest);
+                return true;
+            }
+
+            Game game = gameFactory.get();
+            if (!game.addPlayer(client, findTime)) {
+                return false;
+            }
+            newest = game;
+            reopen(game);
+            return true;
+        }
+    }
+
+    private boolean joinOpenGame(ClientHandler client, long findTime) {
+        for (int free = 1; free <= maxPlayers; free++) {
+            Game game;
+            while ((game = openGames[free].poll()) != null) {
+                if (game.addPlayer(client, findTime)) {
+                    reopen(game);
+                    return true;
+                }
+                // Stale entry, drop it
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void leave(ClientHandler client) {
+        // Clients are seated right away, leaving goes through their game
+    }
+
+    /**
+     * Queues the game under its current number of free seats, if it still takes players
+     */
+    @Override
+    public void reopen(Game game) {
+        int free = game.getMaxPlayers() - game.getPlayerCount();
+        if (free > 0 && free <= maxPlayers && game.isWaiting()) {
+            openGames[free].offer(game);
+        }
+    }
+
+    @Override
+    public void recordTimeToMatch(long nanos) {
+        timeToMatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot takeTimeToMatch() {
+        return timeToMatch.snapshotAndReset();
+    }
+}
@@ -1,20 +1,55 @@
 package server;
 
+import common.EncodedMessage;
+import common.IncorrectNumber;
+import common.LeaderboardEntry;
 import common.Message;
+import common.NumberFound;
+import common.PowerupEffect;
+import common.TimeUpdate;
 import common.User;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * Manages game state and logic
+ * Manages game state and logic.
+ *
+ * A game is a single-threaded actor: the public methods only queue a
+ * command on the game's {@link GameInbox}, and the commands run one at a
+ * time on the shared game pool. Game state is never touched by two threads
+ * at once and needs no locks. Outcomes reach players as messages rather
+ * than return values.
+ *
+ * A game goes WAITING -> ACTIVE -> FINISHED, or straight from WAITING to
+ * FINISHED if everyone leaves before it starts. On finishing it hands its
+ * board back to the {@link BoardPool}, lets go of its players and tells the
+ * server to forget it, so nothing has to sweep for dead games.
  */
 public class Game {
+    enum State {
+        WAITING, // taking players
+        ACTIVE,
+        FINISHED // over or abandoned, ignores every command
+    }
+
     // Game configuration
-    private static final int DEFAULT_GRID_SIZE = 100;
+    static final int DEFAULT_GRID_SIZE = 100;
+    static final int LARGE_GRID_SIZE = 10_000;
+    static final int MIN_GRID_SIZE = 1;
+    // START_GAME carries the whole shuffled board, 3 bytes a number up to here, well inside a frame
+    static final int MAX_GRID_SIZE = 100_000;
+    static final int DEFAULT_MAX_PLAYERS = 3;
     private static final int DEFAULT_GAME_DURATION_SECONDS = 120; // 2 minutes
+    private static final int TIME_UPDATE_INTERVAL_SECONDS = 5;
+    private static final int POWERUP_DURATION_MS = 3000;
+    static final int NO_TICK = 0; // clicks are resolved as they arrive
+    // Furthest a click's client time may predate its arrival in tick mode
+    private static final int MAX_CLICK_LEAD_MS = 150;
     private static final int[] PLAYER_COLORS = {
             Color.RED.getRGB(),
             Color.BLUE.getRGB(),
@@ -24,43 +59,130 @@ public class Game {
     private final int gameId;
     private final int gridSize;
     private final int gameDurationSeconds;
+    private final int tickMillis;
     private final Random random = new Random();
 
+    // Every command runs through here, so the state below has a single writer
+    private final GameInbox inbox;
+
     // Game state
-    private boolean isActive = false;
+    private volatile State state = State.WAITING; // also read by matchmaking
     private long startTime = 0;
+    private int timeUpdatesSent = 0;
     private int targetNumber = -1;
-    private Map<Integer, Integer> foundNumbers = new ConcurrentHashMap<>(); // number -> player ID who found it
-    private final Map<Integer, ClientHandler> players = new ConcurrentHashMap<>();
-    private final AtomicInteger playerCount = new AtomicInteger(0);
+    private final BoardPool boards;
+    private TargetPool targets; // numbers not yet picked as a target, back in the pool once finished
+    private BoardState board; // who found which number, and running scores
+    private final Map<Integer, ClientHandler> players = new HashMap<>();
+    private final AtomicInteger playerCount = new AtomicInteger(0); // seats taken or reserved
     private final int maxPlayers;
     private final DatabaseManager dbManager;
+    private final Matchmaker matchmaker; // told when seats free up and when players get matched
+    private final Consumer<Game> onFinished;
+    private final Map<Integer, Long> findTimes = new HashMap<>(); // userId -> nanoTime of FIND_GAME
+    private final TimingWheel timer; // shared by all games, drives the clock and power-up expiry
+    private TimingWheel.Timeout endTimeout;
+    private TimingWheel.Timeout timeUpdateTimeout;
     private final Set<Integer> confirmedPlayers = new HashSet<>(); // Track which players have confirmed
 
+    // Tick mode: clicks wait here until the end of the tick they arrived in
+    private final List<PendingClick> pendingClicks = new ArrayList<>();
+    private boolean tickScheduled = false;
+
     // Power-ups tracking
-    private final Map<Integer, Long> priorityPowerupEndTime = new ConcurrentHashMap<>(); // userId -> end time
-    private final Map<Integer, Integer> luckyNumberCounts = new ConcurrentHashMap<>(); // userId -> count
-    private final Map<Integer, Integer> initialPowerups = new ConcurrentHashMap<>(); // userId -> initial powerup count
+    private final PowerupSlot priority; // holder's clicks are the only ones that count
+    private final PowerupSlot blockNumbers; // numbers hidden from everyone but the holder
+    private final Map<Integer, Integer> luckyNumberCounts = new HashMap<>(); // userId -> count
+    private final Map<Integer, Integer> initialPowerups = new HashMap<>(); // userId -> initial powerup count
+    private final Map<Integer, Integer> startScores = new HashMap<>(); // userId -> total score when the game started
 
-    public Game(int gameId, DatabaseManager dbManager) {
-        this(gameId, DEFAULT_GRID_SIZE, DEFAULT_GAME_DURATION_SECONDS, 3, dbManager); // Default: 3 players max
+    /**
+     * Grid size and seat count come from the board pool. onFinished is
+     * called once, on the game thread, when the game is over or abandoned.
+     */
+    Game(int gameId, BoardPool boards, int tickMillis, TimingWheel timer, Executor gameExecutor,
+            Matchmaker matchmaker, DatabaseManager dbManager, Consumer<Game> onFinished) {
+        this(gameId, boards, DEFAULT_GAME_DURATION_SECONDS, tickMillis, timer, gameExecutor, matchmaker, dbManager,
+                onFinished);
     }
 
-    public Game(int gameId, int gridSize, int gameDurationSeconds, int maxPlayers, DatabaseManager dbManager) {
+    Game(int gameId, BoardPool boards, int gameDurationSeconds, int tickMillis, TimingWheel timer,
+            Executor gameExecutor, Matchmaker matchmaker, DatabaseManager dbManager, Consumer<Game> onFinished) {
         this.gameId = gameId;
-        this.gridSize = gridSize;
+        this.gridSize = boards.getGridSize();
         this.gameDurationSeconds = gameDurationSeconds;
-        this.maxPlayers = maxPlayers;
+        this.maxPlayers = boards.getMaxPlayers();
+        this.tickMillis = tickMillis;
+        this.timer = timer;
         this.dbManager = dbManager;
+        this.matchmaker = matchmaker;
+        this.onFinished = onFinished;
+        this.inbox = new GameInbox("game " + gameId, gameExecutor);
+        this.priority = new PowerupSlot(timer, inbox);
+        this.blockNumbers = new PowerupSlot(timer, inbox);
+        this.boards = boards;
+        this.targets = boards.takeTargets();
+        this.board = boards.takeBoard();
     }
 
-    public synchronized boolean addPlayer(ClientHandler client) {
-        if (players.size() >= maxPlayers || isActive) {
+    /**
+     * Reserves a seat and queues the join. Returns false if the game is full
+     * or no longer waiting. Once the join goes through the player gets PLAYER_JOINED,
+     * or an ERROR if the game started first. findTime is the System.nanoTime()
+     * of the player's FIND_GAME, for time-to-match metrics.
+     *
+     * Until then the game is the client's pending game, so a disconnect in
+     * between can give the seat back.
+     */
+    public boolean addPlayer(ClientHandler client, long findTime) {
+        int seats;
+        do {
+            seats = playerCount.get();
+            if (seats >= maxPlayers || state != State.WAITING) {
+                return false;
+            }
+        } while (!playerCount.compareAndSet(seats, seats + 1));
+
+        if (state == State.FINISHED) {
+            // Lost the race with closeIfEmpty. It may have backed off because
+            // of our seat, so let it look again once the seat is returned.
+            playerCount.decrementAndGet();
+            inbox.execute(this::closeIfEmpty);
             return false;
         }
+        client.setPendingGame(this);
+        inbox.execute(() -> join(client, findTime));
+        return true;
+    }
 
+    private void join(ClientHandler client, long findTime) {
         int playerId = client.getUser().getId();
+        if (client.isDisconnected()) {
+            // Gone since the seat was reserved, don't seat a dead connection
+            client.setPendingGame(null);
+            releaseSeats(1);
+            return;
+        }
+        if (players.containsKey(playerId)) {
+            // Already seated, give back the extra seat
+            releaseSeats(1);
+            client.setCurrentGame(this);
+            client.setPendingGame(null);
+            return;
+        }
+        if (state != State.WAITING || !board.assignSlot(playerId)) {
+            client.setPendingGame(null);
+            releaseSeats(1);
+            Message errorMsg = new Message(Message.ERROR);
+            errorMsg.put("message", "Could not join a game at this time. Please try again.");
+            sendTo(client, errorMsg);
+            return;
+        }
         players.put(playerId, client);
+        findTimes.put(playerId, findTime);
+        // Current before no longer pending, so a disconnect always sees one of them
+        client.setCurrentGame(this);
+        client.setPendingGame(null);
 
         // Assign a color to the player
         int colorIndex = players.size() - 1;
@@ -75,46 +197,53 @@ public class Game {
         // Initialize player tracking
         luckyNumberCounts.put(playerId, 0);
 
+        System.out.println("User " + client.getUser().getUsername() + " joined game " + gameId +
+                " (Current players: " + players.size() + "/" + maxPlayers + ")");
+
         // Notify all players (including the new one) about the join
         notifyPlayersOfJoin(client.getUser());
 
         // Don't auto-start, wait for player confirmation
-        return true;
     }
 
-    public synchronized void handleStartConfirmation(int playerId) {
-        if (!isActive && players.containsKey(playerId)) {
-            confirmedPlayers.add(playerId);
+    public void handleStartConfirmation(int playerId) {
+        inbox.execute(() -> {
+            if (state == State.WAITING && players.containsKey(playerId)) {
+                confirmedPlayers.add(playerId);
 
-            // Check if all players have confirmed
-            if (confirmedPlayers.size() >= 2 && confirmedPlayers.size() == players.size()) {
-                startGame();
+                // Check if all players have confirmed
+                if (confirmedPlayers.size() >= 2 && confirmedPlayers.size() == players.size()) {
+                    startGame();
+                }
             }
-        }
+        });
     }
 
-    public synchronized void startGame() {
-        if (players.size() < 2 || isActive) {
+    private void startGame() {
+        if (players.size() < 2 || state != State.WAITING) {
             return;
         }
 
-        isActive = true;
+        state = State.ACTIVE;
         startTime = System.currentTimeMillis();
 
-        // Generate and shuffle the numbers
-        List<Integer> numbers = new ArrayList<>(gridSize);
-        for (int i = 1; i <= gridSize; i++) {
-            numbers.add(i);
+        long now = System.nanoTime();
+        for (long findTime : findTimes.values()) {
+            matchmaker.recordTimeToMatch(now - findTime);
         }
-        Collections.shuffle(numbers);
+        findTimes.clear();
+
+        // Generate and shuffle the numbers
+        int[] numbers = TargetPool.shuffledBoard(gridSize, random);
 
         // Pick the first target number
         generateNextTarget();
 
         // Initialize each player with powerups
         final int INITIAL_POWERUP_COUNT = 3;
-        for (int playerId : players.keySet()) {
-            initialPowerups.put(playerId, INITIAL_POWERUP_COUNT);
+        for (Map.Entry<Integer, ClientHandler> entry : players.entrySet()) {
+            initialPowerups.put(entry.getKey(), INITIAL_POWERUP_COUNT);
+            startScores.put(entry.getKey(), entry.getValue().getUser().getTotalScore());
         }
 
         // Send start game message to all players
@@ -128,32 +257,28 @@ public class Game {
 
         broadcastToAllPlayers(startMessage);
 
-        // Start game timer
-        new Thread(this::gameTimerTask).start();
+        // Start the game clock on the shared timer
+        timeUpdatesSent = 0;
+        endTimeout = timer.schedule(() -> inbox.execute(this::endGame), gameDurationSeconds, TimeUnit.SECONDS);
+        scheduleTimeUpdate();
     }
 
-    private void gameTimerTask() {
-        long endTime = startTime + (gameDurationSeconds * 1000);
+    private void scheduleTimeUpdate() {
+        // Due times are counted from the start so the updates don't drift
+        long dueTime = startTime + (timeUpdatesSent + 1) * TIME_UPDATE_INTERVAL_SECONDS * 1000L;
+        timeUpdateTimeout = timer.schedule(() -> inbox.execute(this::sendTimeUpdate),
+                dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
 
-        while (isActive && System.currentTimeMillis() < endTime) {
-            try {
-                Thread.sleep(1000); // Check every second
-
-                // Send time update every 5 seconds
-                long timeRemaining = (endTime - System.currentTimeMillis()) / 1000;
-                if (timeRemaining % 5 == 0 && timeRemaining > 0) {
-                    Message timeMessage = new Message("TIME_UPDATE");
-                    timeMessage.put("remainingSeconds", timeRemaining);
-                    broadcastToAllPlayers(timeMessage);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+    private void sendTimeUpdate() {
+        if (state != State.ACTIVE) {
+            return;
         }
-
-        if (isActive) {
-            endGame();
+        timeUpdatesSent++;
+        int timeRemaining = gameDurationSeconds - timeUpdatesSent * TIME_UPDATE_INTERVAL_SECONDS;
+        if (timeRemaining > 0) {
+            broadcastToAllPlayers(new Message(new TimeUpdate(timeRemaining)));
+            scheduleTimeUpdate();
         }
     }
 
@@ -170,61 +295,119 @@ public class Game {
         return playerInfo;
     }
 
-    public synchronized boolean processNumberFound(int playerId, int number) {
-        if (!isActive || number != targetNumber) {
+    /**
+     * Queues a click. The player gets INCORRECT_NUMBER back if it doesn't count.
+     * In tick mode the click is held until the end of the current tick.
+     */
+    public void processNumberFound(int playerId, int number, int clientTime) {
+        long arrivalTime = System.currentTimeMillis();
+        inbox.execute(() -> {
+            if (tickMillis == NO_TICK) {
+                resolveClick(playerId, number);
+            } else {
+                queueClick(playerId, number, clientTime, arrivalTime);
+            }
+        });
+    }
+
+    private void resolveClick(int playerId, int number) {
+        if (!claimNumber(playerId, number)) {
+            // Send feedback only when it's incorrect
+            ClientHandler client = players.get(playerId);
+            if (client != null) {
+                sendTo(client, new Message(new IncorrectNumber(number)));
+            }
+        }
+    }
+
+    private void queueClick(int playerId, int number, int clientTime, long arrivalTime) {
+        if (state != State.ACTIVE) {
+            resolveClick(playerId, number);
+            return;
+        }
+
+        // Trust the client's time into the game, but only up to MAX_CLICK_LEAD_MS
+        // before the click reached us and never after
+        long arrivedAt = arrivalTime - startTime;
+        long clickTime = Math.max(arrivedAt - MAX_CLICK_LEAD_MS, Math.min(clientTime, arrivedAt));
+        pendingClicks.add(new PendingClick(playerId, number, clickTime));
+
+        if (!tickScheduled) {
+            // Ticks are aligned to the game start; idle ticks are skipped
+            tickScheduled = true;
+            long tickEnd = startTime + (arrivedAt / tickMillis + 1) * tickMillis;
+            timer.schedule(() -> inbox.execute(this::resolveTick), tickEnd - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void resolveTick() {
+        tickScheduled = false;
+
+        // Earliest click wins, arrival order breaks ties (the sort is stable).
+        // There is one target at a time, so a tick claims at most one number
+        // and broadcasts at most one NUMBER_FOUND; the rest are told they missed.
+        pendingClicks.sort(Comparator.comparingLong(click -> click.time));
+        // Indexed, a click that ends the game clears the list
+        for (int i = 0; i < pendingClicks.size(); i++) {
+            PendingClick click = pendingClicks.get(i);
+            resolveClick(click.playerId, click.number);
+        }
+        pendingClicks.clear();
+    }
+
+    private boolean claimNumber(int playerId, int number) {
+        if (state != State.ACTIVE || number != targetNumber) {
             return false;
         }
 
-        // Check for priority power-up effect
-        for (Map.Entry<Integer, Long> entry : priorityPowerupEndTime.entrySet()) {
-            if (entry.getValue() > System.currentTimeMillis() && entry.getKey() != playerId) {
-                // Another player has priority, reject this find
-                return false;
-            }
+        // Another player has priority or has blocked the numbers, reject this find
+        if (priority.locksOut(playerId) || blockNumbers.locksOut(playerId)) {
+            return false;
         }
 
         // Mark the number as found by this player
-        foundNumbers.put(number, playerId);
+        if (!board.claim(number, playerId)) {
+            return false;
+        }
 
         // Update player score
         User user = players.get(playerId).getUser();
         user.addScore(1);
 
         // Check for lucky number (every 10th number)
-        if (foundNumbers.size() % 10 == 0) {
+        if (board.getFoundCount() % 10 == 0) {
             luckyNumberCounts.put(playerId, luckyNumberCounts.getOrDefault(playerId, 0) + 1);
 
             // Notify player of lucky number
-            Message luckyMessage = new Message("LUCKY_NUMBER");
+            Message luckyMessage = new Message(Message.LUCKY_NUMBER);
             luckyMessage.put("count", luckyNumberCounts.get(playerId));
-            try {
-                players.get(playerId).sendMessage(luckyMessage);
-            } catch (IOException e) {
-                System.err.println("Error sending lucky number message: " + e.getMessage());
-            }
+            sendTo(players.get(playerId), luckyMessage);
+        }
+
+        // Check if all numbers have been found. The game finishes and drops
+        // its board, so this is the last thing the click does.
+        if (board.getFoundCount() >= gridSize) {
+            broadcastToAllPlayers(new Message(new NumberFound(number, playerId, targetNumber)));
+            endGame();
+            return true;
         }
 
         // Generate next target
         generateNextTarget();
 
         // Notify all players
-        Message foundMessage = new Message(Message.NUMBER_FOUND);
-        foundMessage.put("number", number);
-        foundMessage.put("playerId", playerId);
-        foundMessage.put("nextTarget", targetNumber);
-
-        broadcastToAllPlayers(foundMessage);
-
-        // Check if all numbers have been found
-        if (foundNumbers.size() >= gridSize) {
-            endGame();
-        }
+        broadcastToAllPlayers(new Message(new NumberFound(number, playerId, targetNumber)));
 
         return true;
     }
 
     public void usePowerup(int playerId, String powerupType) {
-        if (!isActive)
+        inbox.execute(() -> applyPowerup(playerId, powerupType));
+    }
+
+    private void applyPowerup(int playerId, String powerupType) {
+        if (state != State.ACTIVE)
             return;
 
         // First check if player has initial powerups available
@@ -232,106 +415,79 @@ public class Game {
         int availableLuckyNumbers = luckyNumberCounts.getOrDefault(playerId, 0);
 
         switch (powerupType) {
-            case "PRIORITY":
+            case PowerupEffect.PRIORITY:
                 // Use initial powerup first, then lucky numbers if available
                 if (availablePowerups > 0) {
                     // Use one initial powerup
                     initialPowerups.put(playerId, availablePowerups - 1);
 
                     // Give player priority for 3 seconds
-                    priorityPowerupEndTime.put(playerId, System.currentTimeMillis() + 3000);
-
-                    // Notify all players
-                    Message powerupMessage = new Message(Message.POWERUP_EFFECT);
-                    powerupMessage.put("type", "PRIORITY");
-                    powerupMessage.put("playerId", playerId);
-                    powerupMessage.put("durationMs", 3000);
-
-                    broadcastToAllPlayers(powerupMessage);
+                    grantPriority(playerId);
                 } else if (availableLuckyNumbers > 0) {
                     // Fall back to lucky numbers if no initial powerups left
                     luckyNumberCounts.put(playerId, availableLuckyNumbers - 1);
 
                     // Give player priority for 3 seconds
-                    priorityPowerupEndTime.put(playerId, System.currentTimeMillis() + 3000);
-
-                    // Notify all players
-                    Message powerupMessage = new Message(Message.POWERUP_EFFECT);
-                    powerupMessage.put("type", "PRIORITY");
-                    powerupMessage.put("playerId", playerId);
-                    powerupMessage.put("durationMs", 3000);
-
-                    broadcastToAllPlayers(powerupMessage);
+                    grantPriority(playerId);
                 }
                 break;
 
-            case "BLOCK_NUMBERS":
+            case PowerupEffect.BLOCK_NUMBERS:
                 // Use initial powerup first, then lucky numbers if available
                 if (availablePowerups > 0) {
                     // Use one initial powerup
                     initialPowerups.put(playerId, availablePowerups - 1);
 
-                    // Notify all players to block numbers from other players
-                    Message powerupMessage = new Message(Message.POWERUP_EFFECT);
-                    powerupMessage.put("type", "BLOCK_NUMBERS");
-                    powerupMessage.put("playerId", playerId);
-                    powerupMessage.put("durationMs", 3000);
-
-                    broadcastToAllPlayers(powerupMessage);
+                    // Block numbers from other players for 3 seconds
+                    grantBlockNumbers(playerId);
                 } else if (availableLuckyNumbers > 0) {
                     // Fall back to lucky numbers if no initial powerups left
                     luckyNumberCounts.put(playerId, availableLuckyNumbers - 1);
 
-                    // Notify all players to block numbers from other players
-                    Message powerupMessage = new Message(Message.POWERUP_EFFECT);
-                    powerupMessage.put("type", "BLOCK_NUMBERS");
-                    powerupMessage.put("playerId", playerId);
-                    powerupMessage.put("durationMs", 3000);
-
-                    broadcastToAllPlayers(powerupMessage);
+                    // Block numbers from other players for 3 seconds
+                    grantBlockNumbers(playerId);
                 }
                 break;
         }
     }
 
-    private void generateNextTarget() {
-        // Generate a new target number that hasn't been found yet
-        List<Integer> availableNumbers = new ArrayList<>();
-        for (int i = 1; i <= gridSize; i++) {
-            if (!foundNumbers.containsKey(i)) {
-                availableNumbers.add(i);
-            }
-        }
+    private void grantPriority(int playerId) {
+        priority.grant(playerId, POWERUP_DURATION_MS);
+
+        // Notify all players
+        broadcastToAllPlayers(new Message(new PowerupEffect(PowerupEffect.PRIORITY, playerId, POWERUP_DURATION_MS)));
+    }
+
+    private void grantBlockNumbers(int playerId) {
+        // Enforced here as well, the client only hides the buttons
+        blockNumbers.grant(playerId, POWERUP_DURATION_MS);
+
+        // Notify all players to block numbers from other players
+        broadcastToAllPlayers(new Message(
+                new PowerupEffect(PowerupEffect.BLOCK_NUMBERS, playerId, POWERUP_DURATION_MS)));
+    }
 
-        if (!availableNumbers.isEmpty()) {
-            targetNumber = availableNumbers.get(random.nextInt(availableNumbers.size()));
+    private void generateNextTarget() {
+        // Pick a new target that hasn't been found yet. Only the current
+        // target can be found, so every number left in the pool is unfound.
+        if (!targets.isEmpty()) {
+            targetNumber = targets.takeRandom(random);
         } else {
             // All numbers found, end game
             endGame();
         }
     }
 
-    private synchronized void endGame() {
-        if (!isActive)
+    private void endGame() {
+        if (state != State.ACTIVE)
             return;
-        isActive = false;
-
-        // Find the winner (player with most numbers found)
-        Map<Integer, Integer> playerScores = new HashMap<>();
-        for (Integer playerId : foundNumbers.values()) {
-            playerScores.put(playerId, playerScores.getOrDefault(playerId, 0) + 1);
+        if (endTimeout != null) {
+            endTimeout.cancel();
+            timeUpdateTimeout.cancel();
         }
 
-        // Find the winner
-        int winnerId = -1;
-        int highestScore = -1;
-
-        for (Map.Entry<Integer, Integer> entry : playerScores.entrySet()) {
-            if (entry.getValue() > highestScore) {
-                highestScore = entry.getValue();
-                winnerId = entry.getKey();
-            }
-        }
+        // Find the winner (player with most numbers found) from the running scores
+        int winnerId = board.getWinnerId();
 
         // Calculate game duration
         int durationSeconds = (int) ((System.currentTimeMillis() - startTime) / 1000);
@@ -339,10 +495,11 @@ public class Game {
         // Create game over message
         Message gameOverMsg = new Message(Message.GAME_OVER);
         gameOverMsg.put("winnerId", winnerId);
-        gameOverMsg.put("scores", playerScores);
+        gameOverMsg.put("scores", board.getScores());
         gameOverMsg.put("duration", durationSeconds);
 
         // Update player statistics
+        List<GameOutcome.PlayerResult> results = new ArrayList<>(players.size());
         for (Map.Entry<Integer, ClientHandler> entry : players.entrySet()) {
             int playerId = entry.getKey();
             User user = entry.getValue().getUser();
@@ -354,37 +511,115 @@ public class Game {
             }
 
             // Add score from this game
-            int playerScore = playerScores.getOrDefault(playerId, 0);
+            int playerScore = board.getScore(playerId);
             user.addScore(playerScore);
 
-            // Update in database
-            dbManager.updateUserStats(user);
+            // The database gets what this game added, including the points counted as numbers were found
+            int scoreGained = user.getTotalScore() - startScores.getOrDefault(playerId, user.getTotalScore());
+            results.add(new GameOutcome.PlayerResult(playerId, playerId == winnerId, scoreGained));
         }
 
-        // Record game in database
-        List<Integer> playerIds = new ArrayList<>(players.keySet());
-        dbManager.recordGameResult(winnerId, playerIds, durationSeconds);
+        // Journaled now, written to the database in the background. Nothing to record if everyone left.
+        if (!results.isEmpty()) {
+            dbManager.submitOutcome(new GameOutcome(winnerId, durationSeconds, results));
+        }
 
-        // Get updated leaderboard
-        List<User> updatedLeaderboard = dbManager.getLeaderboard();
+        // Get updated leaderboard, already including this game
+        List<User> users = new ArrayList<>(players.size());
+        for (ClientHandler client : players.values()) {
+            users.add(client.getUser());
+        }
+        dbManager.updateLeaderboard(users);
+        List<LeaderboardEntry> updatedLeaderboard = dbManager.getLeaderboard();
         gameOverMsg.put("leaderboard", updatedLeaderboard); // Add updated leaderboard to the message
 
         // Send game over message to all players
         broadcastToAllPlayers(gameOverMsg);
+
+        finish();
+    }
+
+    /**
+     * Finishes a waiting game once its last seat is given back. A seat
+     * reserved while this runs keeps the game open; see addPlayer.
+     */
+    private void closeIfEmpty() {
+        if (state != State.WAITING || playerCount.get() != 0) {
+            return;
+        }
+        state = State.FINISHED;
+        if (playerCount.get() != 0) {
+            // A join slipped in, it will find the game waiting
+            state = State.WAITING;
+            return;
+        }
+        finish();
+    }
+
+    /**
+     * Drops everything the game holds, returns the board to the pool and
+     * tells the server. Commands that arrive later see FINISHED and do nothing.
+     */
+    private void finish() {
+        state = State.FINISHED;
+        priority.clear();
+        blockNumbers.clear();
+        for (ClientHandler client : players.values()) {
+            // Unless the player has already moved on to another game
+            if (client.getCurrentGame() == this) {
+                client.setCurrentGame(null);
+            }
+        }
+        players.clear();
+        confirmedPlayers.clear();
+        findTimes.clear();
+        pendingClicks.clear();
+        luckyNumberCounts.clear();
+        initialPowerups.clear();
+        startScores.clear();
+        boards.release(targets, board);
+        targets = null;
+        board = null;
+        onFinished.accept(this);
+    }
+
+    /**
+     * A click held for tick arbitration
+     */
+    private static final class PendingClick {
+        final int playerId;
+        final int number;
+        final long time; // ms into the game, as bounded by the server
+
+        PendingClick(int playerId, int number, long time) {
+            this.playerId = playerId;
+            this.number = number;
+            this.time = time;
+        }
     }
 
     private void broadcastToAllPlayers(Message message) {
+        // Encode once and share the bytes with every player
+        EncodedMessage encoded = new EncodedMessage(message);
         for (ClientHandler client : players.values()) {
             try {
-                client.sendMessage(message);
+                client.sendEncoded(encoded);
             } catch (IOException e) {
                 System.err.println("Error broadcasting message: " + e.getMessage());
             }
         }
     }
 
+    private void sendTo(ClientHandler client, Message message) {
+        try {
+            client.sendMessage(message);
+        } catch (IOException e) {
+            System.err.println("Error sending " + message.getType() + " message: " + e.getMessage());
+        }
+    }
+
     private void notifyPlayersOfJoin(User newUser) {
-        Message joinMessage = new Message("PLAYER_JOINED");
+        Message joinMessage = new Message(Message.PLAYER_JOINED);
         joinMessage.put("playerId", newUser.getId());
         joinMessage.put("username", newUser.getUsername());
         joinMessage.put("color", newUser.getPlayerColor());
@@ -394,12 +629,31 @@ public class Game {
         broadcastToAllPlayers(joinMessage);
     }
 
+    private void releaseSeats(int seats) {
+        if (playerCount.addAndGet(-seats) == 0) {
+            closeIfEmpty();
+        } else if (state == State.WAITING) {
+            // Let matchmaking offer the seats again
+            matchmaker.reopen(this);
+        }
+    }
+
     public boolean isActive() {
-        return isActive;
+        return state == State.ACTIVE;
     }
 
+    /**
+     * True while the game still takes players
+     */
+    public boolean isWaiting() {
+        return state == State.WAITING;
+    }
+
+    /**
+     * Seats taken, including joins still waiting in the inbox
+     */
     public int getPlayerCount() {
-        return players.size();
+        return playerCount.get();
     }
 
     public int getGameId() {
@@ -413,26 +667,42 @@ public class Game {
     /**
      * Remove a player from the game
      */
-    public synchronized void removePlayer(int playerId) {
-        players.remove(playerId);
-        confirmedPlayers.remove(playerId);
-        if (players.isEmpty() && isActive) {
-            endGame();
-        }
+    public void removePlayer(int playerId) {
+        inbox.execute(() -> {
+            confirmedPlayers.remove(playerId);
+            findTimes.remove(playerId);
+            if (players.remove(playerId) != null) {
+                releaseSeats(1);
+            }
+            if (state == State.WAITING) {
+                // Nothing is owned before the start, so the slot can go to the next player.
+                // During a game the slot stays so the leaver's finds still count.
+                board.releaseSlot(playerId);
+            }
+            if (players.isEmpty() && state == State.ACTIVE) {
+                endGame();
+            }
+        });
     }
 
-    public synchronized void handleDecline(int playerId) {
-        if (players.containsKey(playerId) && !isActive) {
-            // Notify all players that start is canceled
-            Message cancelMsg = new Message(Message.START_CANCELED);
-            broadcastToAllPlayers(cancelMsg);
-            // Clear game assignments for handlers
-            for (ClientHandler client : players.values()) {
-                client.setCurrentGame(null);
+    public void handleDecline(int playerId) {
+        inbox.execute(() -> {
+            if (players.containsKey(playerId) && state == State.WAITING) {
+                // Notify all players that start is canceled
+                Message cancelMsg = new Message(Message.START_CANCELED);
+                broadcastToAllPlayers(cancelMsg);
+                // Clear game assignments for handlers
+                for (ClientHandler client : players.values()) {
+                    client.setCurrentGame(null);
+                }
+                // Reset game state. Joins still queued keep their seats.
+                int seats = players.size();
+                players.clear();
+                confirmedPlayers.clear();
+                findTimes.clear();
+                board.reset();
+                releaseSeats(seats);
             }
-            // Reset game state
-            players.clear();
-            confirmedPlayers.clear();
-        }
+        });
     }
-}
\ No newline at end of file
+}
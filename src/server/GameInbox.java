@@ -0,0 +1,73 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Command inbox that makes a game single-threaded without locks.
+ *
+ * Any thread may submit; commands run one at a time, in submission order,
+ * on a shared executor. At most one drain task per inbox is queued on the
+ * executor, so a game never occupies more than one thread and many games
+ * spread over the pool. A drain gives up its thread after a batch so one
+ * busy game cannot starve the others.
+ */
+class GameInbox implements Executor {
+    private static final int MAX_BATCH = 64;
+
+    private final String name;
+    private final Executor executor;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    GameInbox(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        commands.add(command);
+        if (drainScheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Server is shutting down
+            drainScheduled.set(false);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Runnable command = commands.poll();
+            if (command == null) {
+                break;
+            }
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error in " + name + ": " + e);
+            }
+        }
+
+        if (!commands.isEmpty()) {
+            // More work: go to the back of the executor queue
+            schedule();
+            return;
+        }
+        drainScheduled.set(false);
+
+        // A command may have been submitted after we saw the inbox empty
+        if (!commands.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+}
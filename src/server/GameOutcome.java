@@ -0,0 +1,109 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The result of one finished game, as it is persisted.
+ *
+ * Player stats are carried as changes (a win or a loss, points gained)
+ * rather than totals, so outcomes for the same player can't overwrite each
+ * other and replaying one is safe once its id has been checked. Outcomes
+ * are journaled as single text lines, see {@link #toJournalLine()}.
+ */
+final class GameOutcome {
+    private final String id;
+    private final int winnerId;
+    private final int durationSeconds;
+    private final List<PlayerResult> players;
+
+    GameOutcome(int winnerId, int durationSeconds, List<PlayerResult> players) {
+        this(UUID.randomUUID().toString(), winnerId, durationSeconds, players);
+    }
+
+    private GameOutcome(String id, int winnerId, int durationSeconds, List<PlayerResult> players) {
+        this.id = id;
+        this.winnerId = winnerId;
+        this.durationSeconds = durationSeconds;
+        this.players = Collections.unmodifiableList(new ArrayList<>(players));
+    }
+
+    /**
+     * Unique across restarts, so the database can tell whether it has applied this outcome
+     */
+    String getId() {
+        return id;
+    }
+
+    int getWinnerId() {
+        return winnerId;
+    }
+
+    int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    List<PlayerResult> getPlayers() {
+        return players;
+    }
+
+    /**
+     * id|winnerId|durationSeconds|userId:won:scoreGained,...
+     */
+    String toJournalLine() {
+        StringBuilder line = new StringBuilder(64 + players.size() * 16);
+        line.append(id).append('|').append(winnerId).append('|').append(durationSeconds).append('|');
+        for (int i = 0; i < players.size(); i++) {
+            PlayerResult player = players.get(i);
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(player.userId).append(':').append(player.won ? 1 : 0).append(':').append(player.scoreGained);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Reads a line written by {@link #toJournalLine()}. Throws
+     * IllegalArgumentException for a malformed (e.g. half-written) line.
+     */
+    static GameOutcome parse(String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length != 4 || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("Malformed outcome: " + line);
+        }
+        try {
+            List<PlayerResult> players = new ArrayList<>();
+            if (!fields[3].isEmpty()) {
+                for (String entry : fields[3].split(",")) {
+                    String[] parts = entry.split(":");
+                    if (parts.length != 3) {
+                        throw new IllegalArgumentException("Malformed outcome: " + line);
+                    }
+                    players.add(new PlayerResult(Integer.parseInt(parts[0]), "1".equals(parts[1]),
+                            Integer.parseInt(parts[2])));
+                }
+            }
+            return new GameOutcome(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), players);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed outcome: " + line, e);
+        }
+    }
+
+    /**
+     * What one game changed for one player
+     */
+    static final class PlayerResult {
+        final int userId;
+        final boolean won;
+        final int scoreGained;
+
+        PlayerResult(int userId, boolean won, int scoreGained) {
+            this.userId = userId;
+            this.won = won;
+            this.scoreGained = scoreGained;
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package server;
 
+import common.User;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -16,53 +21,112 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class GameServer {
     private static final int DEFAULT_PORT = 12345;
+    private static final int BACKLOG = 50;
+    private static final int TIMER_TICK_MS = 10; // fine enough for game ticks in tick mode
+    private static final int TIMER_WHEEL_SIZE = 512; // ~5 s per round
+    private static final int METRICS_INTERVAL_SECONDS = 60;
+
+    /**
+     * How client connections are served
+     */
+    public enum Transport {
+        BLOCKING, // one pool thread per client blocked in a read
+        VIRTUAL, // one virtual thread per client blocked in a read (Java 21+)
+        NIO // a few selector event loops shared by all clients
+    }
+
+    /**
+     * How players looking for a game are grouped
+     */
+    public enum Matching {
+        FILL, // join the fullest waiting game right away
+        SKILL // wait for players of similar rating
+    }
+
     private final int port;
+    private final Transport transport;
+    private final int gridSize;
+    private final int tickMillis;
     private final DatabaseManager dbManager;
     private ServerSocket serverSocket;
     private final ExecutorService clientThreadPool;
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    private final ExecutorService gameExecutor;
+    private final TimingWheel gameTimer;
+    private final Matchmaker matchmaker;
+    private final BoardPool boardPool; // board arrays recycled from finished games
+    private NioTransport nioTransport;
+    private final SessionRegistry sessions = new SessionRegistry();
     private final ConcurrentHashMap<Integer, Game> activeGames = new ConcurrentHashMap<>();
     private final AtomicInteger nextGameId = new AtomicInteger(1);
-    private boolean isRunning = true;
+    private volatile boolean isRunning = true;
 
     public GameServer() {
         this(DEFAULT_PORT);
     }
 
     public GameServer(int port) {
+        this(port, Transport.BLOCKING);
+    }
+
+    public GameServer(int port, Transport transport) {
+        this(port, transport, Game.DEFAULT_GRID_SIZE);
+    }
+
+    public GameServer(int port, Transport transport, int gridSize) {
+        this(port, transport, gridSize, Game.NO_TICK);
+    }
+
+    public GameServer(int port, Transport transport, int gridSize, int tickMillis) {
+        this(port, transport, gridSize, tickMillis, Matching.FILL);
+    }
+
+    public GameServer(int port, Transport transport, int gridSize, int tickMillis, Matching matching) {
         this.port = port;
+        this.transport = transport;
+        this.gridSize = gridSize;
+        this.tickMillis = tickMillis;
         this.dbManager = new DatabaseManager();
-        this.clientThreadPool = Executors.newCachedThreadPool();
+        this.clientThreadPool = newClientThreadPool(transport);
+        // Games run their commands here, one thread per core shared by all games
+        this.gameExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        // One timer thread for every game clock; expired tasks only queue game commands
+        this.gameTimer = new TimingWheel("game-timer", TIMER_TICK_MS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE,
+                gameExecutor);
+        this.boardPool = new BoardPool(gridSize, Game.DEFAULT_MAX_PLAYERS);
+        this.matchmaker = matching == Matching.SKILL
+                ? new SkillMatchmaker(Game.DEFAULT_MAX_PLAYERS, this::createGame, gameTimer, gameExecutor)
+                : new FillMatchmaker(Game.DEFAULT_MAX_PLAYERS, this::createGame);
+    }
+
+    private static ExecutorService newClientThreadPool(Transport transport) {
+        if (transport == Transport.VIRTUAL) {
+            // Looked up reflectively so the server still builds on older JDKs
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads require Java 21 or newer. Using platform threads");
+            }
+        }
+        return Executors.newCachedThreadPool();
     }
 
     public void start() {
+        gameTimer.start();
+        scheduleMetricsLog();
+        if (transport == Transport.NIO) {
+            startNio();
+        } else {
+            startBlocking();
+        }
+    }
+
+    private void startBlocking() {
         try {
             // Bind to all available network interfaces (0.0.0.0) instead of just localhost
-            serverSocket = new ServerSocket(port, 50, null);
-
-            System.out.println("Server started on port " + port);
-            System.out.println("Server IP address(es):");
-
-            // Print all server IP addresses for connection information
-            try {
-                java.util.Enumeration<java.net.NetworkInterface> interfaces = java.net.NetworkInterface
-                        .getNetworkInterfaces();
-                while (interfaces.hasMoreElements()) {
-                    java.net.NetworkInterface iface = interfaces.nextElement();
-                    if (iface.isLoopback() || !iface.isUp())
-                        continue;
-
-                    java.util.Enumeration<java.net.InetAddress> addresses = iface.getInetAddresses();
-                    while (addresses.hasMoreElements()) {
-                        java.net.InetAddress addr = addresses.nextElement();
-                        if (addr instanceof java.net.Inet4Address) {
-                            System.out.println("  - " + iface.getDisplayName() + ": " + addr.getHostAddress());
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                System.out.println("  - Unable to determine IP addresses");
-            }
+            serverSocket = new ServerSocket(port, BACKLOG, null);
+            printServerAddresses();
+            System.out.println("Using " + transport.name().toLowerCase() + " transport with a thread per client");
 
             while (isRunning) {
                 try {
@@ -71,7 +135,7 @@ public class GameServer {
 
                     // Create a handler for the new client
                     ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-                    clients.add(clientHandler);
+                    sessions.connected(clientHandler);
 
                     // Start handling the client in a separate thread
                     clientThreadPool.submit(clientHandler);
@@ -88,35 +152,159 @@ public class GameServer {
         }
     }
 
-    public synchronized Game findOrCreateGame() {
-        // First, try to find an existing game that isn't full or active
-        for (Game game : activeGames.values()) {
-            if (!game.isActive() && game.getPlayerCount() < 3) {
-                return game;
+    private void startNio() {
+        try {
+            // Accept on this thread; reads and writes happen on the event loops
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+            serverSocket = serverChannel.socket();
+
+            nioTransport = new NioTransport(Math.max(1, Runtime.getRuntime().availableProcessors()));
+            nioTransport.start();
+            printServerAddresses();
+            System.out.println("Using NIO transport with " + nioTransport.getLoopCount() + " event loop(s)");
+
+            while (isRunning) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+
+                    ClientHandler clientHandler = new ClientHandler(this);
+                    sessions.connected(clientHandler);
+                    nioTransport.register(channel, clientHandler);
+                } catch (IOException e) {
+                    if (isRunning) {
+                        System.err.println("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start server on port " + port + ": " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void printServerAddresses() {
+        System.out.println("Server started on port " + port);
+        System.out.println("Server IP address(es):");
+
+        // Print all server IP addresses for connection information
+        try {
+            java.util.Enumeration<java.net.NetworkInterface> interfaces = java.net.NetworkInterface
+                    .getNetworkInterfaces();
+            while (interfaces.hasMoreElements()) {
+                java.net.NetworkInterface iface = interfaces.nextElement();
+                if (iface.isLoopback() || !iface.isUp())
+                    continue;
+
+                java.util.Enumeration<java.net.InetAddress> addresses = iface.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    java.net.InetAddress addr = addresses.nextElement();
+                    if (addr instanceof java.net.Inet4Address) {
+                        System.out.println("  - " + iface.getDisplayName() + ": " + addr.getHostAddress());
+                    }
+                }
             }
+        } catch (Exception e) {
+            System.out.println("  - Unable to determine IP addresses");
         }
+    }
+
+    /**
+     * Seats the client in a waiting game, or a new one. Returns false if no
+     * seat could be reserved.
+     */
+    public boolean joinGame(ClientHandler client) {
+        return matchmaker.join(client);
+    }
 
-        // If none found, create a new game
+    /**
+     * Drops the client from matchmaking if it is still waiting for a game
+     */
+    public void leaveMatchmaking(ClientHandler client) {
+        matchmaker.leave(client);
+    }
+
+    private Game createGame() {
         int gameId = nextGameId.getAndIncrement();
-        Game newGame = new Game(gameId, dbManager);
+        Game newGame = new Game(gameId, boardPool, tickMillis, gameTimer, gameExecutor, matchmaker, dbManager,
+                this::gameFinished);
         activeGames.put(gameId, newGame);
         return newGame;
     }
 
+    /**
+     * Called by a game once it is over or was abandoned before starting
+     */
+    private void gameFinished(Game game) {
+        activeGames.remove(game.getGameId());
+    }
+
+    private void scheduleMetricsLog() {
+        gameTimer.schedule(() -> {
+            LatencyHistogram.Snapshot timeToMatch = matchmaker.takeTimeToMatch();
+            if (timeToMatch.getCount() > 0) {
+                System.out.println("Time to match (last " + METRICS_INTERVAL_SECONDS + "s): " + timeToMatch);
+            }
+            System.out.println("Games open or in progress: " + activeGames.size());
+            LatencyHistogram.Snapshot readWait = dbManager.takeReadWaitTimes();
+            LatencyHistogram.Snapshot writeWait = dbManager.takeWriteWaitTimes();
+            if (readWait.getCount() > 0 || writeWait.getCount() > 0) {
+                System.out.println("Database wait for a connection: reads " + readWait + "; writes " + writeWait);
+            }
+            int pendingResults = dbManager.getPendingOutcomeCount();
+            if (pendingResults > 0) {
+                System.out.println("Game results waiting for the database: " + pendingResults);
+            }
+            ResultWriter.BatchStats resultCommits = dbManager.takeResultBatchStats();
+            if (resultCommits.getCommitCount() > 0) {
+                System.out.println("Game results (last " + METRICS_INTERVAL_SECONDS + "s): " + resultCommits);
+            }
+            if (matchmaker instanceof SkillMatchmaker) {
+                int waiting = ((SkillMatchmaker) matchmaker).getWaitingCount();
+                if (waiting > 0) {
+                    System.out.println("Players waiting for a match: " + waiting);
+                }
+            }
+            if (isRunning) {
+                scheduleMetricsLog();
+            }
+        }, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
     public void removeClient(ClientHandler client) {
-        clients.remove(client);
+        sessions.disconnected(client);
+    }
+
+    /**
+     * Logs the client in as the user, unless another client already is.
+     * Atomic, so two logins for the same user can't both succeed. The client
+     * must already have the user set; previous is the one it had before.
+     */
+    public boolean claimSession(ClientHandler client, User user, User previous) {
+        return sessions.claim(client, user, previous);
     }
 
-    // New method to get currently connected clients
-    public List<ClientHandler> getClients() {
-        return clients;
+    // Currently connected clients
+    public Collection<ClientHandler> getClients() {
+        return sessions.getConnected();
     }
 
     public DatabaseManager getDatabaseManager() {
         return dbManager;
     }
 
-    public void shutdown() {
+    /**
+     * Pool that runs client read loops, also used for their outbound writers
+     */
+    ExecutorService getClientThreadPool() {
+        return clientThreadPool;
+    }
+
+    public synchronized void shutdown() {
+        if (!isRunning) {
+            return;
+        }
         isRunning = false;
 
         // Close server socket
@@ -129,13 +317,18 @@ public class GameServer {
         }
 
         // Stop all client handlers
-        for (ClientHandler client : clients) {
+        for (ClientHandler client : sessions.getConnected()) {
             client.stop();
         }
-        clients.clear();
+        sessions.clear();
 
-        // Shutdown thread pool
+        // Shutdown thread pools, event loops and game timer
+        gameTimer.stop();
+        gameExecutor.shutdown();
         clientThreadPool.shutdown();
+        if (nioTransport != null) {
+            nioTransport.shutdown();
+        }
 
         // Close database connection
         dbManager.close();
@@ -145,6 +338,9 @@ public class GameServer {
 
     public static void main(String[] args) {
         int port = DEFAULT_PORT;
+        Transport transport = Transport.BLOCKING;
+        int gridSize = Game.DEFAULT_GRID_SIZE;
+        int tickMillis = Game.NO_TICK;
 
         // Allow port to be specified as a command line argument
         if (args.length > 0) {
@@ -155,17 +351,66 @@ public class GameServer {
             }
         }
 
-        GameServer server = new GameServer(port);
+        // Optional second argument selects the transport: "blocking" (default), "virtual" or "nio"
+        if (args.length > 1) {
+            try {
+                transport = Transport.valueOf(args[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid transport: " + args[1] + ". Using " + transport.name().toLowerCase());
+            }
+        }
+
+        // Optional third argument sets the board size: a number of cells, or "large" for 10,000
+        if (args.length > 2) {
+            if ("large".equalsIgnoreCase(args[2])) {
+                gridSize = Game.LARGE_GRID_SIZE;
+            } else {
+                try {
+                    gridSize = Integer.parseInt(args[2]);
+                } catch (NumberFormatException e) {
+                    gridSize = -1;
+                }
+                // Not guessed at: the board pool and every game are sized by it
+                if (gridSize < Game.MIN_GRID_SIZE || gridSize > Game.MAX_GRID_SIZE) {
+                    System.err.println("Invalid grid size: " + args[2] + ". Must be " + Game.MIN_GRID_SIZE + " to "
+                            + Game.MAX_GRID_SIZE + " or \"large\"");
+                    printUsage();
+                    System.exit(1);
+                }
+            }
+        }
+
+        // Optional fourth argument turns on tick mode: clicks are collected and
+        // resolved together every this many milliseconds (0 = as they arrive)
+        if (args.length > 3) {
+            try {
+                tickMillis = Math.max(Game.NO_TICK, Integer.parseInt(args[3]));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid tick length: " + args[3] + ". Resolving clicks as they arrive");
+            }
+        }
+
+        // Optional fifth argument picks the matchmaking: "fill" (default) or "skill"
+        Matching matching = Matching.FILL;
+        if (args.length > 4) {
+            try {
+                matching = Matching.valueOf(args[4].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid matching: " + args[4] + ". Using " + matching.name().toLowerCase());
+            }
+        }
+
+        GameServer server = new GameServer(port, transport, gridSize, tickMillis, matching);
         server.start();
     }
 
+    private static void printUsage() {
+        System.err.println("Usage: GameServer [port] [blocking|virtual|nio] [gridSize|large] [tickMillis] "
+                + "[fill|skill]");
+    }
+
     // Checks if a user is already logged in
     public boolean isUserLoggedIn(String username) {
-        for (ClientHandler client : clients) {
-            if (client.getUser() != null && client.getUser().getUsername().equals(username)) {
-                return true;
-            }
-        }
-        return false;
+        return sessions.isLoggedIn(username);
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, for server metrics.
+ *
+ * Values are kept in microseconds in log-linear buckets: each power of two
+ * is split into 8 buckets, so a reported percentile is within 12.5% of the
+ * true value. Recording is a couple of atomic adds and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(duration));
+        counts.incrementAndGet(bucketOf(micros));
+    }
+
+    /**
+     * Counts so far, clearing the histogram so the next snapshot covers a new interval
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Top bit picks the power of two, the next bits pick the sub-bucket
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS - 1;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable view of the histogram at one point in time
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * Smallest bucket bound that covers the given fraction of values (0..1), in microseconds
+         */
+        public long getPercentileMicros(double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(counts.length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return total + " samples, p50 " + format(getPercentileMicros(0.50)) + ", p90 "
+                    + format(getPercentileMicros(0.90)) + ", p99 " + format(getPercentileMicros(0.99)) + ", max "
+                    + format(getPercentileMicros(1.0));
+        }
+
+        private static String format(long micros) {
+            if (micros >= 1_000_000) {
+                return String.format("%.1fs", micros / 1e6);
+            }
+            if (micros >= 1_000) {
+                return String.format("%.1fms", micros / 1e3);
+            }
+            return micros + "us";
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package server;
+
+import common.EncodedLeaderboard;
+import common.LeaderboardEntry;
+import common.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * The top players, kept in memory instead of sorting the users table on
+ * every login and game over.
+ *
+ * Loaded from the database once, then kept up to date two ways. As a game
+ * ends, {@link #update} takes the players' in-memory stats, so GAME_OVER
+ * already shows that game. Once the result is committed, {@link #refresh}
+ * takes the players' rows as the database has them; those are what counts.
+ * An in-memory copy can be stale (say, the user logged in again before an
+ * earlier result was written), and whatever it got wrong is replaced then.
+ *
+ * Only the top SIZE are held, ordered by score, then wins, then id. Stats
+ * only ever grow, so a player outside the top can only get in by being
+ * updated, and one inside only leaves by being overtaken. In-memory updates
+ * that would move a member down are stale and ignored. Committed stats that
+ * move a member down are taken in place as long as it still ranks above the
+ * rest of the top, since everyone outside ranks below all of those. Only if
+ * it drops below them can someone outside now rank higher, and the top is
+ * loaded again (an index scan, see DatabaseManager).
+ *
+ * Readers get a shared {@link EncodedLeaderboard} without locking. A new one
+ * is built only when an update changes a row in the top, not for every game.
+ */
+class Leaderboard {
+    static final int SIZE = 20;
+
+    private static final Comparator<Row> ORDER = Comparator.comparingInt((Row row) -> -row.totalScore)
+            .thenComparingInt(row -> -row.gamesWon)
+            .thenComparingInt(row -> row.id);
+
+    private final Supplier<List<LeaderboardEntry>> loader; // reads the top SIZE from the database
+    private final TreeSet<Row> top = new TreeSet<>(ORDER); // guarded by this
+    private final Map<Integer, Row> members = new HashMap<>(); // userId -> row in top, guarded by this
+    private volatile EncodedLeaderboard snapshot = new EncodedLeaderboard(new ArrayList<>());
+
+    Leaderboard(Supplier<List<LeaderboardEntry>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Replaces the top with what the database has now
+     */
+    synchronized void load() {
+        top.clear();
+        members.clear();
+        for (LeaderboardEntry entry : loader.get()) {
+            Row row = new Row(entry.getId(), entry.getUsername(), entry.getGamesWon(), entry.getGamesLost(),
+                    entry.getTotalScore());
+            top.add(row);
+            members.put(row.id, row);
+        }
+        trim();
+        rebuild();
+    }
+
+    /**
+     * The current top, already encoded
+     */
+    EncodedLeaderboard top() {
+        return snapshot;
+    }
+
+    /**
+     * Takes in the in-memory stats of the given users, e.g. everyone in a game that just ended
+     */
+    synchronized void update(Collection<User> users) {
+        List<Row> rows = new ArrayList<>(users.size());
+        for (User user : users) {
+            rows.add(new Row(user.getId(), user.getUsername(), user.getGamesWon(), user.getGamesLost(),
+                    user.getTotalScore()));
+        }
+        apply(rows, false);
+    }
+
+    /**
+     * Takes in users' stats as just committed to the database
+     */
+    synchronized void refresh(List<LeaderboardEntry> committed) {
+        List<Row> rows = new ArrayList<>(committed.size());
+        for (LeaderboardEntry entry : committed) {
+            rows.add(new Row(entry.getId(), entry.getUsername(), entry.getGamesWon(), entry.getGamesLost(),
+                    entry.getTotalScore()));
+        }
+        apply(rows, true);
+    }
+
+    private void apply(List<Row> rows, boolean committed) {
+        boolean changed = false;
+        for (Row row : rows) {
+            Row previous = members.get(row.id);
+            if (previous != null) {
+                if (previous.sameAs(row)) {
+                    continue;
+                }
+                if (ORDER.compare(row, previous) > 0 && !committed) {
+                    // Older than what we have
+                    continue;
+                }
+                top.remove(previous);
+                if (ORDER.compare(row, previous) > 0 && top.size() >= SIZE - 1
+                        && ORDER.compare(row, top.last()) > 0) {
+                    // What we showed was ahead of the database, and by enough
+                    // that someone outside may rank above it now
+                    load();
+                    return;
+                }
+            } else if (top.size() >= SIZE && ORDER.compare(row, top.last()) > 0) {
+                // Doesn't make the top
+                continue;
+            }
+            top.add(row);
+            members.put(row.id, row);
+            trim();
+            changed = true;
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    private void trim() {
+        while (top.size() > SIZE) {
+            members.remove(top.pollLast().id);
+        }
+    }
+
+    private void rebuild() {
+        List<LeaderboardEntry> entries = new ArrayList<>(top.size());
+        for (Row row : top) {
+            entries.add(new LeaderboardEntry(entries.size() + 1, row.id, row.username, row.gamesWon, row.gamesLost,
+                    row.totalScore));
+        }
+        snapshot = new EncodedLeaderboard(entries);
+    }
+
+    private static final class Row {
+        final int id;
+        final String username;
+        final int gamesWon;
+        final int gamesLost;
+        final int totalScore;
+
+        Row(int id, String username, int gamesWon, int gamesLost, int totalScore) {
+            this.id = id;
+            this.username = username;
+            this.gamesWon = gamesWon;
+            this.gamesLost = gamesLost;
+            this.totalScore = totalScore;
+        }
+
+        boolean sameAs(Row other) {
+            return gamesWon == other.gamesWon && gamesLost == other.gamesLost && totalScore == other.totalScore
+                    && username.equals(other.username);
+        }
+    }
+}
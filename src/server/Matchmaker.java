@@ -0,0 +1,32 @@
+package server;
+
+/**
+ * Decides which game a player looking for one ends up in
+ */
+interface Matchmaker {
+    /**
+     * Takes a FIND_GAME request. Returns false if the client could not be
+     * placed or queued; otherwise the client hears PLAYER_JOINED once seated.
+     */
+    boolean join(ClientHandler client);
+
+    /**
+     * Forgets a client that is still waiting to be placed
+     */
+    void leave(ClientHandler client);
+
+    /**
+     * Called by a waiting game when seats free up
+     */
+    void reopen(Game game);
+
+    /**
+     * Records how long a player waited from FIND_GAME to the game starting
+     */
+    void recordTimeToMatch(long nanos);
+
+    /**
+     * Time-to-match percentiles since the last call
+     */
+    LatencyHistogram.Snapshot takeTimeToMatch();
+}
@@ -0,0 +1,319 @@
+package server;
+
+import common.EncodedMessage;
+import common.FrameEncoder;
+import common.FrameInputStream;
+import common.Message;
+import common.MessageCodec;
+import common.MessageConnection;
+import common.ReusableMessages;
+import common.SerializedMessageCodec;
+import common.WireFormat;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking client connection driven by an {@link EventLoop}.
+ *
+ * Reads, frame decoding and socket writes all happen on the loop thread.
+ * {@link #sendMessage(Message)} may be called from any thread: it encodes
+ * the frame on the caller's thread and queues it for the loop to write.
+ * The queue is bounded by {@link SlowConsumerPolicy}.
+ */
+public class NioConnection implements MessageConnection {
+    private static final int INITIAL_READ_BUFFER = 4096;
+    private static final int MAX_GATHER = 16; // frames handed to one gathering write
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final ClientHandler handler;
+    private SelectionKey key;
+    private volatile MessageCodec codec; // null until the handshake has been read
+    private volatile boolean isOpen = true;
+
+    // Loop-thread state
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private final FrameInputStream frameIn = new FrameInputStream();
+    private final DataInputStream frameReader = new DataInputStream(frameIn);
+    private final ReusableMessages reusable = new ReusableMessages();
+
+    // Outbound frames queued by any thread and written by the loop
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER]; // loop thread only
+
+    public NioConnection(SocketChannel channel, EventLoop loop, ClientHandler handler) {
+        this.channel = channel;
+        this.loop = loop;
+        this.handler = handler;
+    }
+
+    /**
+     * Registers the channel with the loop's selector. Must run on the loop thread.
+     */
+    void register() {
+        try {
+            channel.configureBlocking(false);
+            key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+        } catch (IOException e) {
+            System.err.println("Could not register client channel: " + e.getMessage());
+            closeNow();
+        }
+    }
+
+    void onReadable() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                closeNow();
+                return;
+            }
+
+            readBuffer.flip();
+            if (codec == null && !readHandshake()) {
+                readBuffer.compact();
+                return;
+            }
+            while (isOpen && readFrame()) {
+                // keep decoding complete frames
+            }
+            if (isOpen) {
+                readBuffer.compact();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Client disconnected: " + e.getMessage());
+            closeNow();
+        }
+    }
+
+    private boolean readHandshake() throws IOException {
+        if (readBuffer.remaining() < WireFormat.HANDSHAKE_LENGTH) {
+            return false;
+        }
+        int requested = WireFormat.checkHandshake(readBuffer.get() & 0xFF, readBuffer.get() & 0xFF,
+                readBuffer.get() & 0xFF, readBuffer.get() & 0xFF);
+        MessageCodec accepted = WireFormat.codecForId(requested);
+        if (accepted == null) {
+            accepted = SerializedMessageCodec.INSTANCE;
+        }
+
+        ByteBuffer reply = ByteBuffer.allocate(WireFormat.HANDSHAKE_LENGTH);
+        reply.put((byte) WireFormat.MAGIC_0).put((byte) WireFormat.MAGIC_1)
+                .put((byte) WireFormat.VERSION).put(accepted.getId()).flip();
+        enqueue(reply);
+
+        codec = accepted;
+        handler.connectionOpened(this);
+        return true;
+    }
+
+    /**
+     * Decodes one frame from the read buffer if it is complete
+     */
+    private boolean readFrame() throws IOException, ClassNotFoundException {
+        int start = readBuffer.position();
+        int length = 0;
+        int shift = 0;
+        int pos = start;
+        while (true) {
+            if (pos >= readBuffer.limit()) {
+                return false; // length prefix not complete yet
+            }
+            int b = readBuffer.get(pos++) & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift >= 35) {
+                throw new StreamCorruptedException("Malformed frame length");
+            }
+        }
+        WireFormat.checkFrameLength(length);
+
+        if (readBuffer.limit() - pos < length) {
+            ensureReadCapacity(pos - start + length);
+            return false;
+        }
+
+        frameIn.reset(readBuffer.array(), readBuffer.arrayOffset() + pos, length);
+        Message message = codec.decode(frameReader, reusable);
+        if (frameIn.available() != 0) {
+            throw new StreamCorruptedException("Trailing bytes in " + message.getType() + " frame");
+        }
+        readBuffer.position(pos + length);
+
+        handler.onMessage(message);
+        return true;
+    }
+
+    private void ensureReadCapacity(int frameSize) {
+        if (frameSize > readBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(frameSize, readBuffer.capacity() * 2));
+            larger.put(readBuffer);
+            larger.flip();
+            readBuffer = larger;
+        }
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    @Override
+    public void sendMessage(Message message) throws IOException {
+        if (!admit(message)) {
+            return;
+        }
+        byte[] frame;
+        synchronized (encoder) {
+            frame = encoder.encode(codec, message);
+        }
+        enqueue(ByteBuffer.wrap(frame));
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage message) throws IOException {
+        if (!admit(message.getMessage())) {
+            return;
+        }
+        enqueue(message.frame(codec));
+    }
+
+    /**
+     * Applies the slow-consumer policy; returns false if the message should not be queued
+     */
+    private boolean admit(Message message) throws IOException {
+        if (!isOpen) {
+            throw new ClosedChannelException();
+        }
+        switch (SlowConsumerPolicy.decide(queuedMessages.get(), message)) {
+            case DROP:
+                return false;
+            case DISCONNECT:
+                System.err.println("Disconnecting slow client " + getRemoteAddress() + ": "
+                        + queuedMessages.get() + " messages queued");
+                close();
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private void enqueue(ByteBuffer frame) {
+        queuedMessages.incrementAndGet();
+        outbound.add(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            if (loop.inEventLoop()) {
+                flush();
+            } else {
+                loop.execute(this::flush);
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the outbound queue as the socket accepts, several
+     * frames per system call. Runs on the loop thread.
+     */
+    private void flush() {
+        if (!isOpen) {
+            return;
+        }
+        try {
+            while (true) {
+                while (!outbound.isEmpty()) {
+                    // Only this thread removes frames, so the head stays put while we gather
+                    int count = 0;
+                    for (ByteBuffer frame : outbound) {
+                        gather[count++] = frame;
+                        if (count == MAX_GATHER) {
+                            break;
+                        }
+                    }
+                    channel.write(gather, 0, count);
+
+                    for (int i = 0; i < count; i++) {
+                        if (gather[i].hasRemaining()) {
+                            break;
+                        }
+                        outbound.poll();
+                        queuedMessages.decrementAndGet();
+                    }
+                    boolean blocked = gather[count - 1].hasRemaining();
+                    Arrays.fill(gather, 0, count, null);
+                    if (blocked) {
+                        // Socket buffer is full, wait for OP_WRITE
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                flushScheduled.set(false);
+
+                // A sender may have queued a frame after we saw the queue empty
+                if (outbound.isEmpty() || !flushScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Client disconnected: " + e.getMessage());
+            closeNow();
+        }
+    }
+
+    @Override
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return isOpen && codec != null;
+    }
+
+    @Override
+    public void close() {
+        if (loop.inEventLoop()) {
+            closeNow();
+        } else {
+            loop.execute(this::closeNow);
+        }
+    }
+
+    private void closeNow() {
+        if (!isOpen) {
+            return;
+        }
+        isOpen = false;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+        outbound.clear();
+        queuedMessages.set(0);
+        handler.connectionClosed();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return channel.socket().getInetAddress().getHostAddress();
+    }
+}
@@ -0,0 +1,44 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking transport: a small fixed set of {@link EventLoop}s shared by
+ * all client connections. Accepted channels are assigned round-robin.
+ */
+public class NioTransport {
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    public NioTransport(int loopCount) throws IOException {
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop("nio-loop-" + i);
+        }
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public void register(SocketChannel channel, ClientHandler clientHandler) {
+        EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        NioConnection connection = new NioConnection(channel, loop, clientHandler);
+        clientHandler.attach(connection);
+        loop.execute(connection::register);
+    }
+
+    public int getLoopCount() {
+        return loops.length;
+    }
+
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed power-up that one player holds at a time (priority, number block).
+ *
+ * While the slot is held, clicks from everyone else are rejected. Checking
+ * that is a single volatile read; expiry is driven by the shared timer and
+ * applied on the owning game's inbox, so nothing is scanned or compared
+ * against the clock per click. A new grant replaces the current holder.
+ */
+class PowerupSlot {
+    private static final int NO_HOLDER = -1;
+
+    private final TimingWheel timer;
+    private final Executor inbox;
+    private volatile int holderId = NO_HOLDER;
+
+    // Game thread only
+    private TimingWheel.Timeout expiry;
+    private int grants; // lets an expiry that was already queued spot a newer grant
+
+    PowerupSlot(TimingWheel timer, Executor inbox) {
+        this.timer = timer;
+        this.inbox = inbox;
+    }
+
+    /**
+     * Gives the slot to the player for the duration. Call on the game thread.
+     */
+    void grant(int playerId, long durationMs) {
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        holderId = playerId;
+        int grant = ++grants;
+        expiry = timer.schedule(() -> inbox.execute(() -> {
+            if (grants == grant) {
+                holderId = NO_HOLDER;
+            }
+        }), durationMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * True if someone other than the player holds the slot
+     */
+    boolean locksOut(int playerId) {
+        int holder = holderId;
+        return holder != NO_HOLDER && holder != playerId;
+    }
+
+    /**
+     * Ends the effect early. Call on the game thread.
+     */
+    void clear() {
+        if (expiry != null) {
+            expiry.cancel();
+            expiry = null;
+        }
+        grants++;
+        holderId = NO_HOLDER;
+    }
+}
@@ -0,0 +1,113 @@
+package server;
+
+import common.ConnectionHandler;
+import common.EncodedMessage;
+import common.Message;
+import common.MessageCodec;
+import common.MessageConnection;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous send side for a blocking connection.
+ *
+ * Senders only enqueue, so game logic never waits on a client's socket.
+ * A writer task drains the queue on the given executor, writes every queued
+ * frame and flushes once per batch. Slow clients are handled by
+ * {@link SlowConsumerPolicy}.
+ */
+public class QueuedConnection implements MessageConnection {
+    private final ConnectionHandler connection;
+    private final Executor writerExecutor;
+    private final Queue<EncodedMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    private final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+
+    public QueuedConnection(ConnectionHandler connection, Executor writerExecutor) {
+        this.connection = connection;
+        this.writerExecutor = writerExecutor;
+    }
+
+    @Override
+    public void sendMessage(Message message) throws IOException {
+        // Encoding is deferred to the writer, off the caller's thread
+        sendEncoded(new EncodedMessage(message));
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage message) throws IOException {
+        switch (SlowConsumerPolicy.decide(queuedMessages.get(), message.getMessage())) {
+            case DROP:
+                return;
+            case DISCONNECT:
+                System.err.println("Disconnecting slow client " + getRemoteAddress() + ": "
+                        + queuedMessages.get() + " messages queued");
+                close();
+                return;
+            default:
+                break;
+        }
+
+        queuedMessages.incrementAndGet();
+        queue.add(message);
+        if (writerScheduled.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Server is shutting down
+                writerScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                EncodedMessage message;
+                while ((message = queue.poll()) != null) {
+                    queuedMessages.decrementAndGet();
+                    connection.writeEncoded(message);
+                }
+                connection.flush();
+                writerScheduled.set(false);
+
+                // A sender may have queued a message after we saw the queue empty
+                if (queue.isEmpty() || !writerScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Client disconnected: " + e.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public MessageCodec getCodec() {
+        return connection.getCodec();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connection.isConnected();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public void close() {
+        // Closing the socket also ends the blocking read loop
+        connection.close();
+        queue.clear();
+        queuedMessages.set(0);
+    }
+}
@@ -0,0 +1,344 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Write-behind persistence for finished games.
+ *
+ * An outcome is appended to a local journal and queued; the game carries
+ * on without waiting for the disk or SQLite. One background thread applies
+ * queued outcomes in order, so each player's results land in the order their
+ * games ended. A failed apply is retried with backoff and holds back the
+ * outcomes behind it rather than reordering them. Once everything journaled
+ * has been applied the journal is truncated.
+ *
+ * Both steps are group commits, done on the writer thread so a game thread
+ * never waits for an fsync. The writer collects outcomes for up to
+ * BATCH_WINDOW_MS (or MAX_BATCH_SIZE of them), forces the journal once for
+ * all of them and applies them in a single transaction. An outcome that
+ * hasn't been forced yet is lost in an OS crash; one that has survives
+ * until the database has it.
+ *
+ * Should the journal be unusable, outcomes are still applied, they just
+ * don't survive a crash.
+ *
+ * A batch that still fails after MAX_ATTEMPTS is retried one outcome at a
+ * time, so a single outcome the database can never take doesn't hold up
+ * everything behind it forever. One that fails on its own too is set aside
+ * in the rejected file next to the journal, in journal format, and skipped.
+ *
+ * After a crash the journal still holds whatever was not known to be
+ * applied; it is replayed on start. The database records the id of every
+ * applied outcome in the same transaction, so an outcome that was applied
+ * just before the crash is skipped instead of counted twice.
+ */
+class ResultWriter {
+    private static final long MIN_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+    private static final long BATCH_WINDOW_MS = 5;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final int MAX_ATTEMPTS = 10; // about 20s with the backoff
+
+    private final Path journalPath;
+    private final Path rejectedPath;
+    private final Predicate<List<GameOutcome>> store; // applies a batch, false if it should be retried
+    private final BlockingQueue<GameOutcome> queue = new LinkedBlockingQueue<>();
+    private final Object journalLock = new Object();
+    private FileChannel journal; // null if it couldn't be opened, guarded by journalLock
+    private int unapplied; // outcomes in the journal not yet applied, guarded by journalLock
+
+    private final LatencyHistogram commitTimes = new LatencyHistogram();
+    private final AtomicLong batchedOutcomes = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+    private Thread writerThread;
+    private volatile boolean running;
+
+    ResultWriter(Path journalPath, Predicate<List<GameOutcome>> store) {
+        this.journalPath = journalPath;
+        this.rejectedPath = journalPath.resolveSibling(journalPath.getFileName() + ".rejected");
+        this.store = store;
+    }
+
+    /**
+     * Applies whatever the journal still holds from the last run, then starts
+     * applying new outcomes. Leftovers are queued instead if they fail to apply.
+     */
+    void start() {
+        synchronized (journalLock) {
+            List<GameOutcome> leftovers = new ArrayList<>();
+            try {
+                if (Files.exists(journalPath)) {
+                    try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            try {
+                                leftovers.add(GameOutcome.parse(line));
+                            } catch (IllegalArgumentException e) {
+                                // Most likely the tail of a write cut short by the crash
+                                System.err.println("Skipping journal entry: " + e.getMessage());
+                            }
+                        }
+                    }
+                }
+                journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error opening result journal, game results won't survive a crash: "
+                        + e.getMessage());
+                journal = null;
+            }
+            if (!leftovers.isEmpty()) {
+                System.out.println("Replaying " + leftovers.size() + " game result(s) from " + journalPath);
+                // Right away, so whatever is read from the database next already includes them
+                if (store.test(leftovers)) {
+                    truncateJournal();
+                } else {
+                    unapplied = leftovers.size();
+                    queue.addAll(leftovers);
+                }
+            }
+        }
+        running = true;
+        writerThread = new Thread(this::run, "result-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Journals the outcome and queues it. Never waits for the disk: the
+     * writer forces the journal before it applies the outcome.
+     */
+    void submit(GameOutcome outcome) {
+        ByteBuffer line = StandardCharsets.UTF_8.encode(outcome.toJournalLine() + "\n");
+        synchronized (journalLock) {
+            if (journal != null) {
+                try {
+                    while (line.hasRemaining()) {
+                        journal.write(line);
+                    }
+                } catch (IOException e) {
+                    // Still queued, it just won't survive a crash
+                    System.err.println("Error journaling game result: " + e.getMessage());
+                }
+            }
+            unapplied++;
+            queue.add(outcome);
+        }
+    }
+
+    /**
+     * Gets everything appended so far onto the disk. Writer thread only.
+     */
+    private void syncJournal() {
+        FileChannel channel;
+        synchronized (journalLock) {
+            channel = journal;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            // Outside the lock, so submits keep appending meanwhile
+            channel.force(false);
+        } catch (IOException e) {
+            System.err.println("Error syncing result journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Outcomes accepted but not yet in the database
+     */
+    int getPendingCount() {
+        synchronized (journalLock) {
+            return unapplied;
+        }
+    }
+
+    private void run() {
+        List<GameOutcome> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                collectBatch(batch);
+                syncJournal();
+                if (!store(batch)) {
+                    if (batch.size() == 1) {
+                        setAside(batch.get(0));
+                    } else {
+                        // See which of them the database won't take
+                        for (GameOutcome outcome : batch) {
+                            if (!store(Collections.singletonList(outcome))) {
+                                setAside(outcome);
+                            }
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return; // still in the journal, replayed on the next start
+            }
+            applied(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Applies the outcomes, retrying with backoff. False if all MAX_ATTEMPTS failed.
+     */
+    private boolean store(List<GameOutcome> outcomes) throws InterruptedException {
+        long retryDelay = MIN_RETRY_DELAY_MS;
+        for (int attempt = 1; ; attempt++) {
+            long commitStart = System.nanoTime();
+            if (store.test(outcomes)) {
+                commitTimes.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS);
+                batchedOutcomes.addAndGet(outcomes.size());
+                largestBatch.accumulateAndGet(outcomes.size(), Math::max);
+                return true;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                return false;
+            }
+            // Outcomes queue up behind a failing batch, get them on disk while we wait
+            syncJournal();
+            System.err.println("Storing " + outcomes.size() + " game result(s) failed, retrying in " + retryDelay
+                    + "ms");
+            Thread.sleep(retryDelay);
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /**
+     * Moves an outcome the database keeps refusing out of the way, where it
+     * can be looked at and put back into the journal by hand
+     */
+    private void setAside(GameOutcome outcome) {
+        String line = outcome.toJournalLine();
+        System.err.println("Giving up on game result " + outcome.getId() + ", setting it aside in " + rejectedPath);
+        try (FileChannel rejected = FileChannel.open(rejectedPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(line + "\n");
+            while (bytes.hasRemaining()) {
+                rejected.write(bytes);
+            }
+            // Before the journal it came from can be truncated
+            rejected.force(false);
+        } catch (IOException e) {
+            // Not lost yet, it's in the log
+            System.err.println("Error setting aside game result: " + e.getMessage() + "\n" + line);
+        }
+    }
+
+    /**
+     * Waits for one outcome, then gathers more until the window closes or the batch is full
+     */
+    private void collectBatch(List<GameOutcome> batch) throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+        while (batch.size() < MAX_BATCH_SIZE) {
+            queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0) {
+                break;
+            }
+            GameOutcome next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void applied(int count) {
+        synchronized (journalLock) {
+            unapplied -= count;
+            if (unapplied == 0) {
+                // Nothing in the journal is still needed
+                truncateJournal();
+            }
+        }
+    }
+
+    private void truncateJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.truncate(0);
+        } catch (IOException e) {
+            // Harmless, the entries are skipped as already applied when replayed
+            System.err.println("Error truncating result journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Commits since the last call: how many, how many outcomes each, and how long each took
+     */
+    BatchStats takeBatchStats() {
+        LatencyHistogram.Snapshot commits = commitTimes.snapshotAndReset();
+        return new BatchStats(commits, batchedOutcomes.getAndSet(0), largestBatch.getAndSet(0));
+    }
+
+    /**
+     * Stops applying. Outcomes still queued stay in the journal for the next start.
+     */
+    void close() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(MAX_RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (journalLock) {
+            try {
+                if (journal != null) {
+                    // Whatever is still queued is replayed from here next time
+                    journal.force(false);
+                    journal.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error closing result journal: " + e.getMessage());
+            }
+        }
+    }
+
+    static final class BatchStats {
+        private final LatencyHistogram.Snapshot commitTimes;
+        private final long outcomes;
+        private final int largest;
+
+        private BatchStats(LatencyHistogram.Snapshot commitTimes, long outcomes, int largest) {
+            this.commitTimes = commitTimes;
+            this.outcomes = outcomes;
+            this.largest = largest;
+        }
+
+        long getCommitCount() {
+            return commitTimes.getCount();
+        }
+
+        @Override
+        public String toString() {
+            long commits = commitTimes.getCount();
+            double average = commits == 0 ? 0 : (double) outcomes / commits;
+            return String.format("%d commits, %.1f games per commit (max %d), commit time %s", commits, average,
+                    largest, commitTimes);
+        }
+    }
+}
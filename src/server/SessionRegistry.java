@@ -0,0 +1,80 @@
+package server;
+
+import common.User;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connected clients, and the logged-in ones indexed by username.
+ *
+ * Connecting and disconnecting are O(1) and never copy anything. A login
+ * claims its username with putIfAbsent, so of two clients logging in as the
+ * same user at the same time exactly one wins; there is no separate
+ * check-then-login window. Claims are dropped when the client disconnects.
+ */
+class SessionRegistry {
+    private final Set<ClientHandler> connected = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, ClientHandler> byUsername = new ConcurrentHashMap<>();
+
+    void connected(ClientHandler client) {
+        connected.add(client);
+    }
+
+    /**
+     * Forgets the client and releases its login, if it had one
+     */
+    void disconnected(ClientHandler client) {
+        connected.remove(client);
+        release(client, client.getUser());
+    }
+
+    /**
+     * Claims the user for the client. Returns false if another client is
+     * already logged in as that user, or the client has disconnected. A client
+     * switching users gives up its claim on previous.
+     *
+     * The client must already have the user set: a disconnect that lands
+     * after the check below then releases the claim itself.
+     */
+    boolean claim(ClientHandler client, User user, User previous) {
+        ClientHandler holder = byUsername.putIfAbsent(user.getUsername(), client);
+        if (holder != null && holder != client) {
+            return false;
+        }
+        if (client.isDisconnected()) {
+            // disconnected() may have run before the client had this user, nobody else will release it
+            release(client, user);
+            return false;
+        }
+        if (previous != null && !previous.getUsername().equals(user.getUsername())) {
+            release(client, previous);
+        }
+        return true;
+    }
+
+    private void release(ClientHandler client, User user) {
+        if (user != null) {
+            // Only if the claim is still ours
+            byUsername.remove(user.getUsername(), client);
+        }
+    }
+
+    boolean isLoggedIn(String username) {
+        return byUsername.containsKey(username);
+    }
+
+    /**
+     * Live view of every connected client, logged in or not
+     */
+    Collection<ClientHandler> getConnected() {
+        return Collections.unmodifiableSet(connected);
+    }
+
+    void clear() {
+        connected.clear();
+        byUsername.clear();
+    }
+}
@@ -0,0 +1,222 @@
+package server;
+
+import common.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Groups waiting players of similar strength into new games.
+ *
+ * Waiting players sit in a skip list ordered by rating (then arrival), so
+ * queueing and leaving are O(log n). A player is matched with their
+ * nearest neighbours by rating that fall inside the band. The band starts
+ * narrow and widens the longer someone waits; each waiting player is
+ * re-checked on the shared timer as their band grows, so the queue is
+ * never swept. Matching runs on its own inbox, which makes claiming a
+ * group atomic. A full game is preferred; after SMALL_GROUP_AFTER_MS a
+ * pair is good enough.
+ */
+class SkillMatchmaker implements Matchmaker {
+    static final int DEFAULT_RATING = 1000;
+    private static final int BASE_BAND = 50;
+    private static final int BAND_STEP = 50; // added every WIDEN_INTERVAL_MS of waiting
+    private static final int MAX_BAND = 1000;
+    private static final long WIDEN_INTERVAL_MS = 2000;
+    private static final long SMALL_GROUP_AFTER_MS = 10_000;
+    private static final int MIN_PLAYERS = 2;
+    private static final int MAX_NEIGHBOURS = 8; // per side, bounds the walk through a crowded rating
+
+    private final int maxPlayers;
+    private final Supplier<Game> gameFactory;
+    private final TimingWheel timer;
+    private final GameInbox inbox;
+    private final ConcurrentSkipListSet<Ticket> waiting = new ConcurrentSkipListSet<>();
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final LatencyHistogram timeToMatch = new LatencyHistogram();
+
+    // Inbox thread only
+    private final Map<ClientHandler, Ticket> tickets = new HashMap<>();
+
+    SkillMatchmaker(int maxPlayers, Supplier<Game> gameFactory, TimingWheel timer, Executor executor) {
+        this.maxPlayers = maxPlayers;
+        this.gameFactory = gameFactory;
+        this.timer = timer;
+        this.inbox = new GameInbox("matchmaker", executor);
+    }
+
+    /**
+     * Rating from a player's record: the win rate, trusted more as games
+     * add up, plus up to 500 points for the average score per game.
+     * Newcomers rate {@link #DEFAULT_RATING}.
+     */
+    static int ratingOf(User user) {
+        int games = user.getGamesWon() + user.getGamesLost();
+        if (games == 0) {
+            return DEFAULT_RATING;
+        }
+        double confidence = games / (games + 10.0);
+        double winRate = 0.5 + (user.getWinRate() - 0.5) * confidence;
+        double averageScore = (double) user.getTotalScore() / games;
+        return (int) Math.round(DEFAULT_RATING + 1000 * (winRate - 0.5) + 10 * Math.min(averageScore, 50));
+    }
+
+    @Override
+    public boolean join(ClientHandler client) {
+        join(client, ratingOf(client.getUser()));
+        return true;
+    }
+
+    void join(ClientHandler client, int rating) {
+        Ticket ticket = new Ticket(client, rating, nextSeq.getAndIncrement(), System.nanoTime());
+        inbox.execute(() -> {
+            // A repeated FIND_GAME replaces the earlier request
+            Ticket previous = tickets.put(client, ticket);
+            if (previous != null) {
+                dequeue(previous);
+            }
+            waiting.add(ticket);
+            if (!tryMatch(ticket)) {
+                scheduleRecheck(ticket);
+            }
+        });
+    }
+
+    @Override
+    public void leave(ClientHandler client) {
+        inbox.execute(() -> {
+            Ticket ticket = tickets.remove(client);
+            if (ticket != null) {
+                dequeue(ticket);
+            }
+        });
+    }
+
+    @Override
+    public void reopen(Game game) {
+        // Games are formed from whole groups and are not topped up
+    }
+
+    @Override
+    public void recordTimeToMatch(long nanos) {
+        timeToMatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot takeTimeToMatch() {
+        return timeToMatch.snapshotAndReset();
+    }
+
+    int getWaitingCount() {
+        return waiting.size();
+    }
+
+    private void scheduleRecheck(Ticket ticket) {
+        ticket.recheck = timer.schedule(() -> inbox.execute(() -> {
+            if (ticket.queued && !tryMatch(ticket)) {
+                scheduleRecheck(ticket);
+            }
+        }), WIDEN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Looks for enough compatible neighbours of the ticket and starts a game
+     * with them. Returns false if the ticket has to keep waiting.
+     */
+    private boolean tryMatch(Ticket ticket) {
+        long now = System.nanoTime();
+        int band = bandOf(ticket, now);
+        long longestWait = ticket.waitedMillis(now);
+        List<Ticket> group = new ArrayList<>(maxPlayers);
+        group.add(ticket);
+
+        // Walk outwards from the ticket, always taking the closer rating next
+        Ticket lower = waiting.lower(ticket);
+        Ticket higher = waiting.higher(ticket);
+        int lowerSeen = 0;
+        int higherSeen = 0;
+        while (group.size() < maxPlayers && (lower != null || higher != null)) {
+            boolean fromLower = higher == null
+                    || (lower != null && ticket.rating - lower.rating <= higher.rating - ticket.rating);
+            Ticket next = fromLower ? lower : higher;
+            int distance = Math.abs(next.rating - ticket.rating);
+            if (distance > MAX_BAND) {
+                break; // everyone further out is even further away
+            }
+            // Either player's band may stretch to cover the other
+            if (distance <= Math.max(band, bandOf(next, now))) {
+                group.add(next);
+                longestWait = Math.max(longestWait, next.waitedMillis(now));
+            }
+            if (fromLower) {
+                lower = ++lowerSeen < MAX_NEIGHBOURS ? waiting.lower(lower) : null;
+            } else {
+                higher = ++higherSeen < MAX_NEIGHBOURS ? waiting.higher(higher) : null;
+            }
+        }
+
+        int needed = longestWait >= SMALL_GROUP_AFTER_MS ? MIN_PLAYERS : maxPlayers;
+        if (group.size() < needed) {
+            return false;
+        }
+
+        Game game = gameFactory.get();
+        for (Ticket member : group) {
+            tickets.remove(member.client);
+            dequeue(member);
+            game.addPlayer(member.client, member.enqueuedAt);
+        }
+        return true;
+    }
+
+    private void dequeue(Ticket ticket) {
+        ticket.queued = false;
+        waiting.remove(ticket);
+        if (ticket.recheck != null) {
+            ticket.recheck.cancel();
+        }
+    }
+
+    private static int bandOf(Ticket ticket, long now) {
+        long steps = ticket.waitedMillis(now) / WIDEN_INTERVAL_MS;
+        return (int) Math.min(MAX_BAND, BASE_BAND + BAND_STEP * steps);
+    }
+
+    /**
+     * A waiting player, ordered by rating and then arrival
+     */
+    private static final class Ticket implements Comparable<Ticket> {
+        final ClientHandler client;
+        final int rating;
+        final long seq;
+        final long enqueuedAt; // System.nanoTime()
+
+        // Inbox thread only
+        boolean queued = true;
+        TimingWheel.Timeout recheck;
+
+        Ticket(ClientHandler client, int rating, long seq, long enqueuedAt) {
+            this.client = client;
+            this.rating = rating;
+            this.seq = seq;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        long waitedMillis(long now) {
+            return TimeUnit.NANOSECONDS.toMillis(now - enqueuedAt);
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byRating = Integer.compare(rating, other.rating);
+            return byRating != 0 ? byRating : Long.compare(seq, other.seq);
+        }
+    }
+}
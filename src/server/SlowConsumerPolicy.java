@@ -0,0 +1,43 @@
+package server;
+
+import common.Message;
+import common.MessageKind;
+
+/**
+ * Decides what to do with an outbound message when a client is not reading
+ * fast enough. Shared by the blocking and NIO transports so both treat slow
+ * clients the same way.
+ */
+final class SlowConsumerPolicy {
+    // Messages allowed to wait for one client before it is disconnected
+    static final int MAX_QUEUED_MESSAGES = 256;
+
+    // Past this backlog, messages the client can live without are dropped
+    static final int DROP_THRESHOLD = 64;
+
+    enum Action {
+        QUEUE,
+        DROP,
+        DISCONNECT
+    }
+
+    private SlowConsumerPolicy() {
+    }
+
+    static Action decide(int queuedMessages, Message message) {
+        if (queuedMessages >= MAX_QUEUED_MESSAGES) {
+            return Action.DISCONNECT;
+        }
+        if (queuedMessages >= DROP_THRESHOLD && isDroppable(message)) {
+            return Action.DROP;
+        }
+        return Action.QUEUE;
+    }
+
+    /**
+     * Time updates are only a resync hint; the client runs its own countdown
+     */
+    static boolean isDroppable(Message message) {
+        return message.getKind() == MessageKind.TIME_UPDATE;
+    }
+}
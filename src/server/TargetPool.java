@@ -0,0 +1,70 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Numbers of a board that have not been picked as a target yet.
+ *
+ * The remaining numbers live in the front of an int array. Taking a random
+ * one swaps it with the last remaining number and shrinks the pool, so each
+ * pick is O(1) and allocation-free regardless of board size. Not thread-safe;
+ * guarded by the owning game.
+ */
+class TargetPool {
+    private final int[] remaining;
+    private int size;
+
+    TargetPool(int gridSize) {
+        remaining = new int[gridSize];
+        reset();
+    }
+
+    /**
+     * Refills the pool with 1..gridSize
+     */
+    void reset() {
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = i + 1;
+        }
+        size = remaining.length;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes and returns a uniformly random remaining number
+     */
+    int takeRandom(Random random) {
+        if (size == 0) {
+            throw new IllegalStateException("No numbers left");
+        }
+        int index = random.nextInt(size);
+        int number = remaining[index];
+        remaining[index] = remaining[--size];
+        remaining[size] = number;
+        return number;
+    }
+
+    /**
+     * Returns 1..gridSize in random order (Fisher-Yates), for laying out the board
+     */
+    static int[] shuffledBoard(int gridSize, Random random) {
+        int[] board = new int[gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            board[i] = i + 1;
+        }
+        for (int i = gridSize - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = board[i];
+            board[i] = board[j];
+            board[j] = tmp;
+        }
+        return board;
+    }
+}